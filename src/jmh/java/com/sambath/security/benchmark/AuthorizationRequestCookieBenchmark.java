@@ -0,0 +1,75 @@
+package com.sambath.security.benchmark;
+
+import com.sambath.security.auth.util.CookieUtils;
+import com.sambath.security.oauth2.AuthorizationRequestCookieCodec;
+import jakarta.servlet.http.Cookie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Java serialization (CookieUtils) against AuthorizationRequestCookieCodec for the OAuth2 authorization
+// request cookie. The cookie sizes are asserted in AuthorizationRequestCookieCodecTest.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationRequestCookieBenchmark {
+    @Param({"java", "compact"})
+    public String codec;
+
+    private AuthorizationRequestCookieCodec cookieCodec;
+    private OAuth2AuthorizationRequest authorizationRequest;
+    private Cookie cookie;
+
+    @Setup
+    public void setUp() {
+        cookieCodec = new AuthorizationRequestCookieCodec(Base64.getEncoder().encodeToString(new byte[32]));
+        authorizationRequest = OAuth2AuthorizationRequest.authorizationCode()
+                .authorizationUri("https://accounts.google.com/o/oauth2/v2/auth")
+                .clientId("123456789012-abcdefghijklmnopqrstuvwxyz012345.apps.googleusercontent.com")
+                .redirectUri("http://localhost:8080/api/v1/oauth2/callback/google")
+                .scopes(new LinkedHashSet<>(List.of("openid", "profile", "email")))
+                .state(UUID.randomUUID().toString())
+                .additionalParameters(Map.of("nonce", "Fz0aJk1l2mN3oP4qR5sT6uV7wX8yZ9aB0cD1eF2gH3i"))
+                .attributes(Map.of(
+                        "registration_id", "google",
+                        "nonce", "kLmNoPqRsTuVwXyZ0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWX"
+                ))
+                .build();
+        cookie = new Cookie("oauth2_auth_request", encode(authorizationRequest));
+    }
+
+    @Benchmark
+    public String encode() {
+        return encode(authorizationRequest);
+    }
+
+    @Benchmark
+    public OAuth2AuthorizationRequest decode() {
+        return "java".equals(codec)
+                ? CookieUtils.deserialize(cookie, OAuth2AuthorizationRequest.class)
+                : cookieCodec.decode(cookie.getValue());
+    }
+
+    private String encode(OAuth2AuthorizationRequest request) {
+        return "java".equals(codec) ? CookieUtils.serialize(request) : cookieCodec.encode(request);
+    }
+}
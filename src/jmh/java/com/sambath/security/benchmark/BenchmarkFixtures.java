@@ -0,0 +1,67 @@
+package com.sambath.security.benchmark;
+
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.jwt.JwtAuthenticationFilter;
+import com.sambath.security.jwt.JwtKeyRegistry;
+import com.sambath.security.jwt.JwtUtil;
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.ratelimit.ConcurrencyLimiters;
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.service.UserSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.UUID;
+
+// Builds the auth components outside of Spring with the same settings as application.yml
+final class BenchmarkFixtures {
+    static final String ACCESS_TOKEN_SECRET_KEY = "c2VjcmV0LWtleS1mb3ItYWNjZXNzLXRva2Vucy1pbi1iZW5jaG1hcmtzLTEyMzQ1Njc4OTA=";
+    static final String REFRESH_TOKEN_SECRET_KEY = "c2VjcmV0LWtleS1mb3ItcmVmcmVzaC10b2tlbnMtaW4tYmVuY2htYXJrcy0xMjM0NTY3ODkw";
+
+    private BenchmarkFixtures() {
+    }
+
+    static JwtUtil jwtUtil(boolean statelessAccessToken, boolean verifiedTokenCache) {
+        return jwtUtil(statelessAccessToken, verifiedTokenCache, "HS256");
+    }
+
+    static JwtUtil jwtUtil(boolean statelessAccessToken, boolean verifiedTokenCache, String signingAlgorithm) {
+        AppProperties appProperties = new AppProperties();
+        AppProperties.Jwt jwt = appProperties.getAuth().getJwt();
+        jwt.setAccessTokenSecretKey(ACCESS_TOKEN_SECRET_KEY);
+        jwt.setRefreshTokenSecretKey(REFRESH_TOKEN_SECRET_KEY);
+        jwt.setStatelessAccessToken(statelessAccessToken);
+        jwt.getVerifiedTokenCache().setEnabled(verifiedTokenCache);
+        // ES256 uses an ephemeral key pair generated by JwtKeyRegistry
+        jwt.setSigningAlgorithm(signingAlgorithm);
+        // Timers record into an in-memory registry, as they would into the Prometheus one
+        JwtUtil jwtUtil = new JwtUtil(appProperties, new JwtKeyRegistry(appProperties), new AuthMetrics(new SimpleMeterRegistry()));
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    // The filter takes the stateless setting from jwtUtil
+    static JwtAuthenticationFilter jwtAuthenticationFilter(JwtUtil jwtUtil, UserSnapshot user) {
+        return new JwtAuthenticationFilter(jwtUtil, username -> user, concurrencyLimiters());
+    }
+
+    static ConcurrencyLimiters concurrencyLimiters() {
+        return new ConcurrencyLimiters(new SimpleMeterRegistry(), true, 20, 10, 1000, 2.0, 0.2);
+    }
+
+    // What the user details cache hands out
+    static UserSnapshot user() {
+        return UserSnapshot.of(User.builder()
+                .id(UUID.randomUUID().toString())
+                .name("Bench Mark")
+                .firstName("Bench")
+                .lastName("Mark")
+                .email("bench.mark@example.com")
+                .password("{noop}unused")
+                .provider(AuthProvider.email)
+                .role(Role.USER)
+                .enabled(true)
+                .build());
+    }
+}
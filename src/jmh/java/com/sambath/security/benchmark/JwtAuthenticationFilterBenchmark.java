@@ -0,0 +1,60 @@
+package com.sambath.security.benchmark;
+
+import com.sambath.security.jwt.JwtAuthenticationFilter;
+import com.sambath.security.jwt.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.TimeUnit;
+
+// End-to-end Bearer handling: header parsing, token verification, principal lookup and SecurityContext update.
+// The UserDetailsService is an in-memory stub, so database latency is not part of the numbers.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+    @Param({"false", "true"})
+    public boolean statelessAccessToken;
+    @Param({"false", "true"})
+    public boolean verifiedTokenCache;
+
+    private JwtAuthenticationFilter filter;
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = BenchmarkFixtures.jwtUtil(statelessAccessToken, verifiedTokenCache);
+        var user = BenchmarkFixtures.user();
+        filter = BenchmarkFixtures.jwtAuthenticationFilter(jwtUtil, user);
+        authorizationHeader = "Bearer " + jwtUtil.generateAccessToken(user);
+    }
+
+    @Benchmark
+    public Authentication bearerRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/demo-controller");
+        request.addHeader("Authorization", authorizationHeader);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.sambath.security.benchmark;
+
+import com.sambath.security.jwt.JwtUtil;
+import com.sambath.security.user.service.UserSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtUtilBenchmark {
+    @Param({"false", "true"})
+    public boolean statelessAccessToken;
+    @Param({"false", "true"})
+    public boolean verifiedTokenCache;
+    @Param({"HS256", "ES256"})
+    public String signingAlgorithm;
+
+    private JwtUtil jwtUtil;
+    private UserSnapshot user;
+    private Map<String, Object> refreshTokenClaims;
+    private String accessToken;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = BenchmarkFixtures.jwtUtil(statelessAccessToken, verifiedTokenCache, signingAlgorithm);
+        user = BenchmarkFixtures.user();
+        refreshTokenClaims = Map.of(JwtUtil.REFRESH_TOKEN_ID_CLAIM, UUID.randomUUID().toString());
+        accessToken = jwtUtil.generateAccessToken(user);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtUtil.generateAccessToken(user);
+    }
+
+    @Benchmark
+    public String generateRefreshToken() {
+        return jwtUtil.generateRefreshToken(refreshTokenClaims, user);
+    }
+
+    @Benchmark
+    public String extractUsernameAccessToken() {
+        return jwtUtil.extractUsernameAccessToken(accessToken);
+    }
+
+    @Benchmark
+    public boolean isAccessTokenValid() {
+        return jwtUtil.isAccessTokenValid(accessToken, user);
+    }
+}
@@ -0,0 +1,104 @@
+package com.sambath.security.benchmark;
+
+import com.sambath.security.user.entity.RefreshToken;
+import com.sambath.security.user.service.RefreshTokenWriteBehind;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Refresh token writes per second at login, one insert per token versus write-behind batches.
+// Needs a Postgres database, see README.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class RefreshTokenWriteBenchmark {
+    private static final String USER_ID = UUID.randomUUID().toString();
+
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private RefreshTokenWriteBehind refreshTokenWriteBehind;
+    private MeterRegistry meterRegistry;
+
+    @Setup
+    public void setUp() {
+        String url = System.getenv("BENCHMARK_JDBC_URL");
+        if (url == null) {
+            throw new IllegalStateException("BENCHMARK_JDBC_URL is not set");
+        }
+        // Pooled like the application, so the synchronous path is not measuring connection setup
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(System.getenv("BENCHMARK_JDBC_USERNAME"));
+        dataSource.setPassword(System.getenv("BENCHMARK_JDBC_PASSWORD"));
+        dataSource.setMaximumPoolSize(16);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // Same keys and indexes as the application's refresh_token table, so each insert pays for them too
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS users (id VARCHAR(255) PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS refresh_token (id VARCHAR(255) PRIMARY KEY, " +
+                "user_id VARCHAR(255) NOT NULL REFERENCES users (id), " +
+                "created_at TIMESTAMP NOT NULL, expires_at TIMESTAMP NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS refresh_token_user_id_idx ON refresh_token (user_id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS refresh_token_expires_at_idx ON refresh_token (expires_at)");
+        jdbcTemplate.execute("TRUNCATE refresh_token");
+        jdbcTemplate.update("INSERT INTO users (id) VALUES (?) ON CONFLICT DO NOTHING", USER_ID);
+        meterRegistry = new SimpleMeterRegistry();
+        refreshTokenWriteBehind = new RefreshTokenWriteBehind(
+                null, jdbcTemplate, meterRegistry, true, 20, 500, 10_000, 3, 3_000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        refreshTokenWriteBehind.shutdown();
+        dataSource.close();
+        // Abandoned tokens were returned but never written, a score that counts them is not a throughput
+        double abandoned = meterRegistry.counter("auth.refresh.token.write.behind.abandoned").count();
+        if (abandoned > 0) {
+            throw new IllegalStateException(abandoned + " refresh tokens were abandoned");
+        }
+    }
+
+    @Benchmark
+    public String issue() {
+        LocalDateTime now = LocalDateTime.now();
+        RefreshToken refreshToken = RefreshToken.builder()
+                .userId(USER_ID)
+                .createdAt(now)
+                .expiresAt(now.plusDays(30))
+                .build();
+        if (writeBehind) {
+            refreshTokenWriteBehind.save(refreshToken);
+            return refreshToken.getId();
+        }
+        // What RefreshTokenRepository.save does at the database, one auto-committed insert
+        String id = UUID.randomUUID().toString();
+        jdbcTemplate.update("INSERT INTO refresh_token (id, user_id, created_at, expires_at) VALUES (?, ?, ?, ?)",
+                id, USER_ID, Timestamp.valueOf(now), Timestamp.valueOf(now.plusDays(30)));
+        return id;
+    }
+}
@@ -7,46 +7,62 @@ import com.sambath.security.auth.dto.RegisterRequest;
 import com.sambath.security.confirmationToken.ConfirmationTokenRequest;
 import com.sambath.security.auth.dto.SuccessResponse;
 import com.sambath.security.email.EmailSenderService;
+import com.sambath.security.jwt.JwtKeyRegistry;
+import com.sambath.security.ratelimit.RateLimiter;
 import com.sambath.security.user.dto.RefreshTokenRequest;
 import com.sambath.security.user.dto.RefreshTokenResponse;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/v1/auth")
 @RequiredArgsConstructor
 public class AuthenticationController {
     private final AuthenticationService authenticationService;
+    private final JwtKeyRegistry jwtKeyRegistry;
+    private final RateLimiter rateLimiter;
     private final static Logger LOGGER = LoggerFactory
             .getLogger(EmailSenderService.class);
 
     @PostMapping("/register")
     public ResponseEntity<SuccessResponse> register(
-            @Valid @RequestBody RegisterRequest request
+            @Valid @RequestBody RegisterRequest request,
+            HttpServletRequest httpRequest
     ) {
+        rateLimiter.check("register", httpRequest.getRemoteAddr(), request.getEmail());
         LOGGER.info("Register User");
         return ResponseEntity.ok(authenticationService.register(request));
     }
 
     @PostMapping("/confirm")
     public ResponseEntity<SuccessResponse> confirm(
-            @Valid @RequestBody ConfirmationTokenRequest request
-            ) {
+            @Valid @RequestBody ConfirmationTokenRequest request,
+            HttpServletRequest httpRequest
+    ) {
+        rateLimiter.check("confirm", httpRequest.getRemoteAddr());
         LOGGER.info("Confirm Token");
         return ResponseEntity.ok(authenticationService.confirmToken(request.getToken()));
     }
 
     @PostMapping("/login")
     public ResponseEntity<AuthenticationResponse> register(
-            @Valid @RequestBody AuthenticationRequest request
+            @Valid @RequestBody AuthenticationRequest request,
+            HttpServletRequest httpRequest
     ) {
+        rateLimiter.check("login", httpRequest.getRemoteAddr(), request.getEmail());
         LOGGER.info("Login User");
         return ResponseEntity.ok(authenticationService.authenticate(request));
     }
@@ -71,9 +87,18 @@ public class AuthenticationController {
 
     @PostMapping("/refresh-token")
     public ResponseEntity<RefreshTokenResponse> refreshToken(
-            @Valid @RequestBody RefreshTokenRequest request
+            @Valid @RequestBody RefreshTokenRequest request,
+            HttpServletRequest httpRequest
     ) {
+        rateLimiter.check("refresh-token", httpRequest.getRemoteAddr());
         LOGGER.info("Refresh Token");
         return ResponseEntity.ok(authenticationService.refreshToken(request));
     }
+
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(jwtKeyRegistry.getJwksMaxAgeInSec())).cachePublic())
+                .body(jwtKeyRegistry.getJwks());
+    }
 }
@@ -7,31 +7,40 @@ import com.sambath.security.auth.dto.RegisterRequest;
 import com.sambath.security.exception.BadRequestException;
 import com.sambath.security.exception.EmailAlreadyExistsException;
 import com.sambath.security.exception.ResourceNotFoundException;
+import com.sambath.security.exception.ServiceUnavailableException;
 import com.sambath.security.confirmationToken.ConfirmationToken;
 import com.sambath.security.auth.dto.SuccessResponse;
+import com.sambath.security.config.AppProperties;
 import com.sambath.security.confirmationToken.ConfirmationTokenService;
 import com.sambath.security.email.EmailSenderService;
+import com.sambath.security.jfr.RepositoryCallEvent;
 import com.sambath.security.jwt.JwtService;
 import com.sambath.security.jwt.JwtUtil;
+import com.sambath.security.metrics.AuthMetrics;
 import com.sambath.security.user.dto.RefreshTokenRequest;
 import com.sambath.security.user.dto.RefreshTokenResponse;
 import com.sambath.security.user.dto.UserResponse;
 import com.sambath.security.user.entity.AuthProvider;
-import com.sambath.security.user.entity.RefreshToken;
 import com.sambath.security.user.entity.Role;
 import com.sambath.security.user.entity.User;
-import com.sambath.security.user.repository.RefreshTokenRepository;
 import com.sambath.security.user.repository.UserRepository;
+import com.sambath.security.user.service.RefreshTokenStore;
+import com.sambath.security.user.service.UserDetailsCache;
 import com.sambath.security.user.service.UserService;
+import com.sambath.security.user.service.UserSnapshot;
+import io.jsonwebtoken.Claims;
 import lombok.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.UUID;
 
@@ -40,21 +49,23 @@ import java.util.UUID;
 public class AuthenticationService {
     private final UserRepository userRepository;
     private final UserService userService;
-    private final RefreshTokenRepository refreshTokenRepository;
+    private final RefreshTokenStore refreshTokenStore;
     private final EmailSenderService emailSenderService;
     private final JwtService jwtService;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
     private final AuthenticationManager authenticationManager;
     private final ConfirmationTokenService confirmationTokenService;
-    @Value("${app.auth.jwt.refresh-token-rotation}")
-    private boolean JWT_REFRESH_TOKEN_ROTATION;
+    private final UserDetailsCache userDetailsCache;
+    private final RefreshTokenSingleFlight refreshTokenSingleFlight;
+    private final AuthMetrics authMetrics;
+    private final AppProperties appProperties;
     private final static Logger LOGGER = LoggerFactory.getLogger(AuthenticationService.class);
 
     // Register user
     public SuccessResponse register(RegisterRequest request) {
         // Check if user already exists
-        if (userRepository.existsByEmail(request.getEmail())) {
+        if (RepositoryCallEvent.record("existsByEmail", () -> userRepository.existsByEmail(request.getEmail()))) {
             LOGGER.error("Email already exists");
             throw new EmailAlreadyExistsException("Email already exists");
         }
@@ -70,7 +81,7 @@ public class AuthenticationService {
                 .role(Role.USER)
                 .build();
         // Save user to database
-        userRepository.save(user);
+        RepositoryCallEvent.record("saveUser", () -> userRepository.save(user));
 
         // Generate Confirmation token
         String token = UUID.randomUUID().toString();
@@ -82,7 +93,8 @@ public class AuthenticationService {
                 .build();
 
         // Save confirmation token to database
-        confirmationTokenService.saveConfirmationToken(confirmationToken);
+        RepositoryCallEvent.record("saveConfirmationToken",
+                () -> confirmationTokenService.saveConfirmationToken(confirmationToken));
 
 //        // Send confirmation token to user email
 //        String link = "http://localhost:8080/api/v1/registration/confirm?token=" + token;
@@ -100,41 +112,55 @@ public class AuthenticationService {
     public AuthenticationResponse authenticate(AuthenticationRequest request) {
 
         // Authenticate user with email and password
+        Authentication authentication;
         try {
-            authenticationManager.authenticate(
+            authentication = authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
                             request.getEmail(),
                             request.getPassword()
                     )
             );
+        } catch (ServiceUnavailableException e) {
+            // Password check pool is saturated, answer 503 instead of a login failure
+            LOGGER.warn(e.getMessage());
+            throw e;
         } catch (Exception e) {
+            // The provider wraps whatever fails while it loads the user, including a rejected timing-attack hash
+            if (e instanceof InternalAuthenticationServiceException
+                    && e.getCause() instanceof ServiceUnavailableException serviceUnavailable) {
+                LOGGER.warn(serviceUnavailable.getMessage());
+                throw serviceUnavailable;
+            }
             if (e.getMessage().equals("Bad credentials")) {
+                authMetrics.failure(AuthMetrics.FailureReason.BAD_CREDENTIALS);
                 LOGGER.error("Incorrect username or password");
                 throw new BadRequestException("Incorrect username or password");
             }
+            if (e instanceof DisabledException) {
+                authMetrics.failure(AuthMetrics.FailureReason.DISABLED);
+            }
             LOGGER.error(e.getMessage());
             throw new BadRequestException(e.getMessage());
         }
 
-        // Find user by email
-        var user = userRepository.findUserByEmail(request.getEmail())
-                .orElseThrow(() -> new ResourceNotFoundException("User", "email", request.getEmail()));
+        // Authenticated principal is the user already loaded by the authentication provider
+        var user = (UserSnapshot) authentication.getPrincipal();
 
         return generateAuthenticationResponse(user);
     }
 
     // Generate AuthenticationResponse
-    public AuthenticationResponse generateAuthenticationResponse(User user) {
+    public AuthenticationResponse generateAuthenticationResponse(UserSnapshot user) {
         // Generate JWT token
         JwtToken jwtToken = jwtService.generateJwtToken(user);
 
         // Generate UserResponse
         UserResponse userResponse = UserResponse.builder()
-                .id(user.getId())
-                .firstName(user.getFirstName())
-                .lastName(user.getLastName())
-                .email(user.getEmail())
-                .role(user.getRole())
+                .id(user.id())
+                .firstName(user.firstName())
+                .lastName(user.lastName())
+                .email(user.email())
+                .role(user.role())
                 .build();
 
         return AuthenticationResponse.builder()
@@ -148,13 +174,23 @@ public class AuthenticationService {
     public void logout(RefreshTokenRequest request) {
         // Get refresh token id from request
         var refreshToken = request.getRefreshToken();
-        // Get refresh token id from refresh token string
-        var refreshTokenId = jwtUtil.extractRefreshTokenId(refreshToken);
-        // If refresh token id is valid and refresh token exists in database
-        if (jwtUtil.isRefreshTokenValid(refreshToken) && refreshTokenRepository.existsById(refreshTokenId)) {
-            // Delete refresh token from database
-            refreshTokenRepository.deleteById(refreshTokenId);
-        } else {
+        // Verify refresh token once and keep its claims
+        var claims = jwtUtil.parseRefreshToken(refreshToken);
+        // Get refresh token id from refresh token claims
+        var refreshTokenId = jwtUtil.extractRefreshTokenId(claims);
+        if (!jwtUtil.isRefreshTokenValid(claims)) {
+            authMetrics.failure(AuthMetrics.FailureReason.UNKNOWN_REFRESH_TOKEN);
+            throw new BadRequestException("Refresh token is invalid");
+        }
+        // End the reuse grace window, a token rotated moments ago takes its successor with it
+        var successorRefreshTokenId = refreshTokenSingleFlight.invalidate(refreshTokenId);
+        boolean revoked = RepositoryCallEvent.record("revokeRefreshToken", () -> refreshTokenStore.revoke(refreshTokenId));
+        if (successorRefreshTokenId != null) {
+            revoked |= RepositoryCallEvent.record("revokeRefreshToken", () -> refreshTokenStore.revoke(successorRefreshTokenId));
+        }
+        // If refresh token was already revoked
+        if (!revoked) {
+            authMetrics.failure(AuthMetrics.FailureReason.UNKNOWN_REFRESH_TOKEN);
             throw new BadRequestException("Refresh token is invalid");
         }
     }
@@ -163,16 +199,24 @@ public class AuthenticationService {
     public void logoutAll(RefreshTokenRequest request) {
         // Get refresh token id from request
         var refreshToken = request.getRefreshToken();
-        // Get refresh token id from refresh token string
-        var refreshTokenId = jwtUtil.extractRefreshTokenId(refreshToken);
-        // If refresh token id is valid and refresh token exists in database
-        if (jwtUtil.isRefreshTokenValid(refreshToken) && refreshTokenRepository.existsById(refreshTokenId)) {
+        // Verify refresh token once and keep its claims
+        var claims = jwtUtil.parseRefreshToken(refreshToken);
+        // Get refresh token id from refresh token claims
+        var refreshTokenId = jwtUtil.extractRefreshTokenId(claims);
+        // If refresh token id is valid and refresh token is still stored
+        if (jwtUtil.isRefreshTokenValid(claims)
+                && RepositoryCallEvent.record("refreshTokenExists", () -> refreshTokenStore.exists(refreshTokenId))) {
             // Get user from user id in refresh token
-            var user = userRepository.findUserByEmail(jwtUtil.extractUsernameRefreshToken(refreshToken))
-                    .orElseThrow(() -> new ResourceNotFoundException("User", "email", jwtUtil.extractUsernameRefreshToken(refreshToken)));
-            // Delete all refresh token from database
-            refreshTokenRepository.deleteAllByUserId(user.getId());
+            var user = RepositoryCallEvent.record("findUserByEmail",
+                            () -> userRepository.findUserByEmail(claims.getSubject()))
+                    .orElseThrow(() -> new ResourceNotFoundException("User", "email", claims.getSubject()));
+            // Delete all refresh token of the user and end their reuse grace windows
+            refreshTokenSingleFlight.invalidateAllForUser(user.getEmail());
+            RepositoryCallEvent.record("revokeAllRefreshTokens", () -> refreshTokenStore.revokeAllForUser(user.getId()));
+            // Force a fresh user lookup on the next request
+            userDetailsCache.evict(user.getEmail());
         } else {
+            authMetrics.failure(AuthMetrics.FailureReason.UNKNOWN_REFRESH_TOKEN);
             throw new BadRequestException("Refresh token is invalid");
         }
     }
@@ -181,52 +225,80 @@ public class AuthenticationService {
     public RefreshTokenResponse refreshToken(RefreshTokenRequest request) {
         // Get refresh token id from request
         var refreshToken = request.getRefreshToken();
-        // Get refresh token id from refresh token string
-        var refreshTokenId = jwtUtil.extractRefreshTokenId(refreshToken);
-        // If refresh token id is valid and refresh token exists in database
-        if (jwtUtil.isRefreshTokenValid(refreshToken) && refreshTokenRepository.existsById(refreshTokenId)) {
+        // Verify refresh token once and keep its claims
+        var claims = jwtUtil.parseRefreshToken(refreshToken);
+        // Get refresh token id from refresh token claims
+        var refreshTokenId = jwtUtil.extractRefreshTokenId(claims);
+        // If refresh token is expired
+        if (!jwtUtil.isRefreshTokenValid(claims)) {
+            throw new BadRequestException("Refresh token is invalid");
+        }
+
+        // If refresh token rotation is enabled, concurrent refreshes with the same token share one rotation
+        if (appProperties.getAuth().getJwt().isRefreshTokenRotation()) {
+            return refreshTokenSingleFlight.rotate(refreshTokenId, () ->
+                    authMetrics.refreshRotation().record(() -> rotateRefreshToken(refreshTokenId, claims)));
+        }
+
+        // If refresh token is still stored
+        if (RepositoryCallEvent.record("refreshTokenExists", () -> refreshTokenStore.exists(refreshTokenId))) {
             // Get user from user id in refresh token
-            var user = userRepository.findUserByEmail(jwtUtil.extractUsernameRefreshToken(refreshToken))
-                    .orElseThrow(() -> new ResourceNotFoundException("User", "email", jwtUtil.extractUsernameRefreshToken(refreshToken)));
+            var user = RepositoryCallEvent.record("findUserByEmail",
+                            () -> userRepository.findUserByEmail(claims.getSubject()))
+                    .orElseThrow(() -> new ResourceNotFoundException("User", "email", claims.getSubject()));
             // Generate access token
             var accessToken = jwtUtil.generateAccessToken(user);
 
-            // If refresh token rotation is enabled
-            if (JWT_REFRESH_TOKEN_ROTATION) {
-                // Delete refresh token from database
-                refreshTokenRepository.deleteById(refreshTokenId);
-                // Build refresh token object
-                RefreshToken newRefreshToken = RefreshToken.builder()
-                        .user(user)
-                        .build();
-                // Save refresh token to database
-                refreshTokenRepository.save(newRefreshToken);
-                // Generate extraClaims for refresh token
-                Map<String, Object> extraClaims = Map.of(
-                        "refreshTokenId", newRefreshToken.getId()
-                );
-                // Generate refresh token with extraClaims
-                var newRefreshTokenString = jwtUtil.generateRefreshToken(extraClaims, user);
-
-                return RefreshTokenResponse.builder()
-                        .accessToken(accessToken)
-                        .refreshToken(newRefreshTokenString)
-                        .build();
-            } else {
-                return RefreshTokenResponse.builder()
-                        .accessToken(accessToken)
-                        .refreshToken(refreshToken)
-                        .build();
-            }
+            return RefreshTokenResponse.builder()
+                    .accessToken(accessToken)
+                    .refreshToken(refreshToken)
+                    .build();
         } else {
+            authMetrics.failure(AuthMetrics.FailureReason.UNKNOWN_REFRESH_TOKEN);
             throw new BadRequestException("Refresh token is invalid");
         }
     }
 
+    // Replace refresh token with a new one and issue a new token pair
+    private RefreshTokenSingleFlight.Rotation rotateRefreshToken(String refreshTokenId, Claims claims) {
+        // Replace refresh token atomically, a token that was already rotated yields nothing
+        var rotated = RepositoryCallEvent.record("rotateRefreshToken", () -> refreshTokenStore.rotate(
+                        refreshTokenId,
+                        LocalDateTime.now().plus(jwtUtil.getRefreshTokenExpiration())
+                ))
+                .orElseThrow(() -> {
+                    authMetrics.failure(AuthMetrics.FailureReason.UNKNOWN_REFRESH_TOKEN);
+                    return new BadRequestException("Refresh token is invalid");
+                });
+        // Get user from cache instead of another query, the stored owner must match the token subject
+        var user = (UserSnapshot) userDetailsCache.loadUserByUsername(claims.getSubject());
+        if (!rotated.userId().equals(user.id())) {
+            throw new BadRequestException("Refresh token is invalid");
+        }
+        // Generate access token
+        var accessToken = jwtUtil.generateAccessToken(user);
+        // Generate extraClaims for refresh token
+        Map<String, Object> extraClaims = Map.of(
+                JwtUtil.REFRESH_TOKEN_ID_CLAIM, rotated.refreshTokenId()
+        );
+        // Generate refresh token with extraClaims
+        var newRefreshTokenString = jwtUtil.generateRefreshToken(extraClaims, user);
+
+        return new RefreshTokenSingleFlight.Rotation(
+                user.email(),
+                rotated.refreshTokenId(),
+                RefreshTokenResponse.builder()
+                        .accessToken(accessToken)
+                        .refreshToken(newRefreshTokenString)
+                        .build()
+        );
+    }
+
     // Confirm user email
     public SuccessResponse confirmToken(String token) {
         // Find confirmation token by token
-        var confirmationToken = confirmationTokenService.findConfirmationTokenByToken(token)
+        var confirmationToken = RepositoryCallEvent.record("findConfirmationToken",
+                        () -> confirmationTokenService.findConfirmationTokenByToken(token))
                 .orElseThrow(() -> new BadRequestException("Confirmation token not found"));
         // If confirmation token is already confirmed
         if (confirmationToken.getConfirmedAt() != null) {
@@ -237,9 +309,9 @@ public class AuthenticationService {
             throw new BadRequestException("Confirmation token expired");
         }
         // Set confirmation token confirmedAt
-        confirmationTokenService.setConfirmedAt(token);
+        RepositoryCallEvent.record("confirmToken", () -> confirmationTokenService.setConfirmedAt(token));
         // Enable user
-        userService.enableUser(confirmationToken.getUser().getEmail());
+        RepositoryCallEvent.record("enableUser", () -> userService.enableUser(confirmationToken.getUser().getEmail()));
         return SuccessResponse.builder()
                 .message("Email confirmed")
                 .build();
@@ -0,0 +1,151 @@
+package com.sambath.security.auth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.exception.ServiceUnavailableException;
+import com.sambath.security.user.dto.RefreshTokenResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Coalesces concurrent rotations of the same refresh token into one, keyed by refresh token id.
+// Callers that arrive while a rotation runs wait for it and get the same successor pair, and for
+// a short grace window after it the old token keeps returning that pair instead of failing.
+// Revoking the old token, its successor or all tokens of the user ends the grace window.
+// Only refresh tokens that already passed signature and expiration checks may reach this.
+@Component
+public class RefreshTokenSingleFlight {
+    private static final long MAXIMUM_RECENTLY_ROTATED = 100_000;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Rotation>> inFlight = new ConcurrentHashMap<>();
+    // Rotations by rotated refresh token id, null when the grace window is disabled
+    private final Cache<String, Rotation> recentlyRotated;
+    // Refresh token ids and usernames revoked within the grace window, so a rotation that finishes
+    // right after a revocation is not remembered either
+    private final Cache<String, Boolean> revoked;
+    private final long maxWaitInMs;
+
+    @Autowired
+    public RefreshTokenSingleFlight(AppProperties appProperties) {
+        this(
+                appProperties.getAuth().getJwt().getRefreshTokenReuseGraceInSec(),
+                appProperties.getAuth().getJwt().getRefreshTokenRotationMaxWaitInMs()
+        );
+    }
+
+    RefreshTokenSingleFlight(long graceInSec, long maxWaitInMs) {
+        this.recentlyRotated = graceInSec > 0
+                ? Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_RECENTLY_ROTATED)
+                .expireAfterWrite(Duration.ofSeconds(graceInSec))
+                .build()
+                : null;
+        this.revoked = graceInSec > 0
+                ? Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_RECENTLY_ROTATED)
+                .expireAfterWrite(Duration.ofSeconds(graceInSec))
+                .build()
+                : null;
+        this.maxWaitInMs = maxWaitInMs;
+    }
+
+    // Outcome of one rotation, the username and successor id let revocations find it
+    public record Rotation(String username, String successorRefreshTokenId, RefreshTokenResponse response) {
+    }
+
+    public RefreshTokenResponse rotate(String refreshTokenId, Supplier<Rotation> rotation) {
+        Rotation rotated = getRecentlyRotated(refreshTokenId);
+        if (rotated != null) {
+            return rotated.response();
+        }
+
+        CompletableFuture<Rotation> flight = new CompletableFuture<>();
+        CompletableFuture<Rotation> leader = inFlight.putIfAbsent(refreshTokenId, flight);
+        if (leader != null) {
+            return await(leader).response();
+        }
+        try {
+            // The previous rotation may have finished between the cache read and putIfAbsent
+            rotated = getRecentlyRotated(refreshTokenId);
+            if (rotated == null) {
+                rotated = rotation.get();
+                remember(refreshTokenId, rotated);
+            }
+            flight.complete(rotated);
+            return rotated.response();
+        } catch (RuntimeException e) {
+            // Waiting callers fail the same way, failures are never remembered
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(refreshTokenId, flight);
+        }
+    }
+
+    // Forget rotations of or to the revoked refresh token, returns the successor id of a rotated token if known.
+    // Entries only live for the grace window, so scanning them stays cheap.
+    public String invalidate(String refreshTokenId) {
+        if (recentlyRotated == null) {
+            return null;
+        }
+        revoked.put(refreshTokenId, Boolean.TRUE);
+        Rotation rotated = recentlyRotated.asMap().remove(refreshTokenId);
+        recentlyRotated.asMap().values().removeIf(rotation -> rotation.successorRefreshTokenId().equals(refreshTokenId));
+        return rotated != null ? rotated.successorRefreshTokenId() : null;
+    }
+
+    // Forget every rotation of the user's refresh tokens
+    public void invalidateAllForUser(String username) {
+        if (recentlyRotated != null) {
+            revoked.put(userKey(username), Boolean.TRUE);
+            recentlyRotated.asMap().values().removeIf(rotation -> rotation.username().equals(username));
+        }
+    }
+
+    // Revocations mark first and then remove, remembering stores first and then checks the marks,
+    // so whichever runs second sees the other
+    private void remember(String refreshTokenId, Rotation rotated) {
+        if (recentlyRotated == null) {
+            return;
+        }
+        recentlyRotated.put(refreshTokenId, rotated);
+        if (revoked.getIfPresent(refreshTokenId) != null
+                || revoked.getIfPresent(rotated.successorRefreshTokenId()) != null
+                || revoked.getIfPresent(userKey(rotated.username())) != null) {
+            recentlyRotated.asMap().remove(refreshTokenId, rotated);
+        }
+    }
+
+    private static String userKey(String username) {
+        return "user:" + username;
+    }
+
+    private Rotation getRecentlyRotated(String refreshTokenId) {
+        return recentlyRotated != null ? recentlyRotated.getIfPresent(refreshTokenId) : null;
+    }
+
+    // Wait for the leader's rotation, but never longer than the configured bound
+    private Rotation await(CompletableFuture<Rotation> leader) {
+        try {
+            return leader.get(maxWaitInMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new ServiceUnavailableException("Refresh token rotation is taking too long, try again");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Refresh token rotation was interrupted");
+        }
+    }
+}
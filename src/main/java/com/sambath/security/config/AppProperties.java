@@ -2,15 +2,218 @@ package com.sambath.security.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix = "app")
 public class AppProperties {
+    private final Auth auth = new Auth();
     private final OAuth2 oauth2 = new OAuth2();
+    private final RateLimit rateLimit = new RateLimit();
+
+    public static final class Auth {
+        private final Jwt jwt = new Jwt();
+
+        public Jwt getJwt() {
+            return jwt;
+        }
+    }
+
+    public static final class Jwt {
+        private String accessTokenSecretKey;
+        private String refreshTokenSecretKey;
+        private long accessTokenExpirationInMin = 5;
+        private long refreshTokenExpirationInDay = 30;
+        private boolean refreshTokenRotation;
+        private long refreshTokenReuseGraceInSec = 10;
+        private long refreshTokenRotationMaxWaitInMs = 5000;
+        private boolean statelessAccessToken;
+        private final TokenCache verifiedTokenCache = new TokenCache();
+        // HS256 signs access tokens with access-token-secret-key, ES256 with the active signing key
+        private String signingAlgorithm = "HS256";
+        private String activeKeyId;
+        private List<SigningKey> signingKeys = new ArrayList<>();
+        private long jwksMaxAgeInSec = 300;
+        // In ES256 mode, accept HMAC access tokens without kid until the sunset, which is required when enabled
+        private boolean acceptLegacyHmac;
+        private Instant legacyHmacSunset;
+
+        public String getAccessTokenSecretKey() {
+            return accessTokenSecretKey;
+        }
+
+        public void setAccessTokenSecretKey(String accessTokenSecretKey) {
+            this.accessTokenSecretKey = accessTokenSecretKey;
+        }
+
+        public String getRefreshTokenSecretKey() {
+            return refreshTokenSecretKey;
+        }
+
+        public void setRefreshTokenSecretKey(String refreshTokenSecretKey) {
+            this.refreshTokenSecretKey = refreshTokenSecretKey;
+        }
+
+        public long getAccessTokenExpirationInMin() {
+            return accessTokenExpirationInMin;
+        }
+
+        public void setAccessTokenExpirationInMin(long accessTokenExpirationInMin) {
+            this.accessTokenExpirationInMin = accessTokenExpirationInMin;
+        }
+
+        public long getRefreshTokenExpirationInDay() {
+            return refreshTokenExpirationInDay;
+        }
+
+        public void setRefreshTokenExpirationInDay(long refreshTokenExpirationInDay) {
+            this.refreshTokenExpirationInDay = refreshTokenExpirationInDay;
+        }
+
+        public boolean isRefreshTokenRotation() {
+            return refreshTokenRotation;
+        }
+
+        public void setRefreshTokenRotation(boolean refreshTokenRotation) {
+            this.refreshTokenRotation = refreshTokenRotation;
+        }
+
+        public long getRefreshTokenReuseGraceInSec() {
+            return refreshTokenReuseGraceInSec;
+        }
+
+        public void setRefreshTokenReuseGraceInSec(long refreshTokenReuseGraceInSec) {
+            this.refreshTokenReuseGraceInSec = refreshTokenReuseGraceInSec;
+        }
+
+        public long getRefreshTokenRotationMaxWaitInMs() {
+            return refreshTokenRotationMaxWaitInMs;
+        }
+
+        public void setRefreshTokenRotationMaxWaitInMs(long refreshTokenRotationMaxWaitInMs) {
+            this.refreshTokenRotationMaxWaitInMs = refreshTokenRotationMaxWaitInMs;
+        }
+
+        public boolean isStatelessAccessToken() {
+            return statelessAccessToken;
+        }
+
+        public void setStatelessAccessToken(boolean statelessAccessToken) {
+            this.statelessAccessToken = statelessAccessToken;
+        }
+
+        public TokenCache getVerifiedTokenCache() {
+            return verifiedTokenCache;
+        }
+
+        public String getSigningAlgorithm() {
+            return signingAlgorithm;
+        }
+
+        public void setSigningAlgorithm(String signingAlgorithm) {
+            this.signingAlgorithm = signingAlgorithm;
+        }
+
+        public String getActiveKeyId() {
+            return activeKeyId;
+        }
+
+        public void setActiveKeyId(String activeKeyId) {
+            this.activeKeyId = activeKeyId;
+        }
+
+        public List<SigningKey> getSigningKeys() {
+            return signingKeys;
+        }
+
+        public void setSigningKeys(List<SigningKey> signingKeys) {
+            this.signingKeys = signingKeys;
+        }
+
+        public long getJwksMaxAgeInSec() {
+            return jwksMaxAgeInSec;
+        }
+
+        public void setJwksMaxAgeInSec(long jwksMaxAgeInSec) {
+            this.jwksMaxAgeInSec = jwksMaxAgeInSec;
+        }
+
+        public boolean isAcceptLegacyHmac() {
+            return acceptLegacyHmac;
+        }
+
+        public void setAcceptLegacyHmac(boolean acceptLegacyHmac) {
+            this.acceptLegacyHmac = acceptLegacyHmac;
+        }
+
+        public Instant getLegacyHmacSunset() {
+            return legacyHmacSunset;
+        }
+
+        public void setLegacyHmacSunset(Instant legacyHmacSunset) {
+            this.legacyHmacSunset = legacyHmacSunset;
+        }
+    }
+
+    public static final class TokenCache {
+        private boolean enabled;
+        private long maximumSize = 100000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+    }
+
+    public static final class SigningKey {
+        private String keyId;
+        // Base64 PKCS#8 private key, only needed for the key that signs
+        private String privateKey;
+        // Base64 X.509 public key, published in the JWKS
+        private String publicKey;
+
+        public String getKeyId() {
+            return keyId;
+        }
+
+        public void setKeyId(String keyId) {
+            this.keyId = keyId;
+        }
+
+        public String getPrivateKey() {
+            return privateKey;
+        }
+
+        public void setPrivateKey(String privateKey) {
+            this.privateKey = privateKey;
+        }
+
+        public String getPublicKey() {
+            return publicKey;
+        }
+
+        public void setPublicKey(String publicKey) {
+            this.publicKey = publicKey;
+        }
+    }
 
     public static final class OAuth2 {
         private List<String> authorizedRedirectUris = new ArrayList<>();
+        private final HttpClient httpClient = new HttpClient();
 
         public List<String> getAuthorizedRedirectUris() {
             return authorizedRedirectUris;
@@ -20,9 +223,200 @@ public class AppProperties {
             this.authorizedRedirectUris = authorizedRedirectUris;
             return this;
         }
+
+        public HttpClient getHttpClient() {
+            return httpClient;
+        }
+    }
+
+    public static final class HttpClient {
+        private int maxConnectionsTotal = 100;
+        // Idle pooled connections are closed after this
+        private long keepAliveInSec = 30;
+        // Time a call waits for a pooled connection once its provider is at max-connections
+        private long connectionRequestTimeoutInMs = 1000;
+        private long connectTimeoutInMs = 2000;
+        private long readTimeoutInMs = 5000;
+        // Concurrent connections per provider host, which caps concurrent calls to it
+        private int maxConnections = 20;
+        // Overrides by client registration id
+        private Map<String, ProviderHttpClient> providers = new HashMap<>();
+
+        public int getMaxConnectionsTotal() {
+            return maxConnectionsTotal;
+        }
+
+        public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+            this.maxConnectionsTotal = maxConnectionsTotal;
+        }
+
+        public long getKeepAliveInSec() {
+            return keepAliveInSec;
+        }
+
+        public void setKeepAliveInSec(long keepAliveInSec) {
+            this.keepAliveInSec = keepAliveInSec;
+        }
+
+        public long getConnectionRequestTimeoutInMs() {
+            return connectionRequestTimeoutInMs;
+        }
+
+        public void setConnectionRequestTimeoutInMs(long connectionRequestTimeoutInMs) {
+            this.connectionRequestTimeoutInMs = connectionRequestTimeoutInMs;
+        }
+
+        public long getConnectTimeoutInMs() {
+            return connectTimeoutInMs;
+        }
+
+        public void setConnectTimeoutInMs(long connectTimeoutInMs) {
+            this.connectTimeoutInMs = connectTimeoutInMs;
+        }
+
+        public long getReadTimeoutInMs() {
+            return readTimeoutInMs;
+        }
+
+        public void setReadTimeoutInMs(long readTimeoutInMs) {
+            this.readTimeoutInMs = readTimeoutInMs;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public Map<String, ProviderHttpClient> getProviders() {
+            return providers;
+        }
+
+        public void setProviders(Map<String, ProviderHttpClient> providers) {
+            this.providers = providers;
+        }
+    }
+
+    public static final class ProviderHttpClient {
+        // Each setting left null falls back to the app.oauth2.http-client default
+        private Long connectTimeoutInMs;
+        private Long readTimeoutInMs;
+        private Integer maxConnections;
+
+        public Long getConnectTimeoutInMs() {
+            return connectTimeoutInMs;
+        }
+
+        public void setConnectTimeoutInMs(Long connectTimeoutInMs) {
+            this.connectTimeoutInMs = connectTimeoutInMs;
+        }
+
+        public Long getReadTimeoutInMs() {
+            return readTimeoutInMs;
+        }
+
+        public void setReadTimeoutInMs(Long readTimeoutInMs) {
+            this.readTimeoutInMs = readTimeoutInMs;
+        }
+
+        public Integer getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(Integer maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+    }
+
+    public static final class RateLimit {
+        private boolean enabled = true;
+        // Upper bound of buckets kept per endpoint and key type, idle buckets are dropped once full again
+        private long maximumKeys = 100000;
+        // Limits by endpoint name, endpoints without an entry are not limited
+        private Map<String, Endpoint> endpoints = new HashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumKeys() {
+            return maximumKeys;
+        }
+
+        public void setMaximumKeys(long maximumKeys) {
+            this.maximumKeys = maximumKeys;
+        }
+
+        public Map<String, Endpoint> getEndpoints() {
+            return endpoints;
+        }
+
+        public void setEndpoints(Map<String, Endpoint> endpoints) {
+            this.endpoints = endpoints;
+        }
+    }
+
+    public static final class Endpoint {
+        // Limit per client IP, null for none
+        private Limit ip;
+        // Limit per target email, null for none
+        private Limit email;
+
+        public Limit getIp() {
+            return ip;
+        }
+
+        public void setIp(Limit ip) {
+            this.ip = ip;
+        }
+
+        public Limit getEmail() {
+            return email;
+        }
+
+        public void setEmail(Limit email) {
+            this.email = email;
+        }
+    }
+
+    public static final class Limit {
+        // Requests allowed in a burst
+        private int capacity;
+        // Requests added back to the bucket per minute
+        private int refillPerMinute;
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public int getRefillPerMinute() {
+            return refillPerMinute;
+        }
+
+        public void setRefillPerMinute(int refillPerMinute) {
+            this.refillPerMinute = refillPerMinute;
+        }
+    }
+
+    public Auth getAuth() {
+        return auth;
     }
 
     public OAuth2 getOauth2() {
         return oauth2;
     }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
 }
@@ -1,7 +1,15 @@
 package com.sambath.security.config;
 
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.password.BCryptStrengthCalibrator;
+import com.sambath.security.password.BoundedPasswordEncoder;
 import com.sambath.security.user.repository.UserRepository;
+import com.sambath.security.user.service.UserDetailsCache;
+import com.sambath.security.user.service.UserSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
@@ -10,35 +18,76 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 
 @Configuration
 @RequiredArgsConstructor
 public class ApplicationConfig {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ApplicationConfig.class);
 
     private final UserRepository userRepository;
+    private final MeterRegistry meterRegistry;
+    private final AuthMetrics authMetrics;
     @Value("${spring.security.oauth2.client.registration.google.client-id}")
     private String googleClientId;
+    @Value("${app.auth.user-details-cache.enabled}")
+    private boolean USER_DETAILS_CACHE_ENABLED;
+    @Value("${app.auth.user-details-cache.maximum-size}")
+    private long USER_DETAILS_CACHE_MAXIMUM_SIZE;
+    @Value("${app.auth.user-details-cache.expiration-in-sec}")
+    private long USER_DETAILS_CACHE_EXPIRATION_IN_SEC;
+    @Value("${app.auth.password-encoder.strength}")
+    private int PASSWORD_ENCODER_STRENGTH;
+    @Value("${app.auth.password-encoder.calibrate}")
+    private boolean PASSWORD_ENCODER_CALIBRATE;
+    @Value("${app.auth.password-encoder.target-hash-time-in-ms}")
+    private long PASSWORD_ENCODER_TARGET_HASH_TIME_IN_MS;
+    @Value("${app.auth.password-encoder.minimum-strength}")
+    private int PASSWORD_ENCODER_MINIMUM_STRENGTH;
+    @Value("${app.auth.password-encoder.maximum-strength}")
+    private int PASSWORD_ENCODER_MAXIMUM_STRENGTH;
+    @Value("${app.auth.password-encoder.pool-size}")
+    private int PASSWORD_ENCODER_POOL_SIZE;
+    @Value("${app.auth.password-encoder.queue-capacity}")
+    private int PASSWORD_ENCODER_QUEUE_CAPACITY;
+    @Value("${app.auth.password-encoder.max-wait-in-ms}")
+    private long PASSWORD_ENCODER_MAX_WAIT_IN_MS;
 
-    // Add user details service
+    // Add user details service, cached so authenticated requests do not query the database every time
     @Bean
-    public UserDetailsService userDetailsService() {
-        return username -> userRepository.findUserByEmail(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    public UserDetailsCache userDetailsService() {
+        // Only lookups that reach the database are timed, cache hits show up in the cache metrics
+        UserDetailsService userDetailsService = username -> authMetrics.userLookup().record(() ->
+                userRepository.findUserByEmail(username)
+                        .map(UserSnapshot::of)
+                        .orElseThrow(() -> new UsernameNotFoundException("User not found")));
+        UserDetailsCache userDetailsCache = new UserDetailsCache(
+                userDetailsService,
+                USER_DETAILS_CACHE_ENABLED,
+                USER_DETAILS_CACHE_MAXIMUM_SIZE,
+                Duration.ofSeconds(USER_DETAILS_CACHE_EXPIRATION_IN_SEC)
+        );
+        authMetrics.monitorCache(userDetailsCache.getCache(), "userDetails");
+        return userDetailsCache;
     }
 
-    // Add authentication provider
+    // Add authentication provider, outdated password hashes are replaced after a successful login
     @Bean
-    public AuthenticationProvider authenticationProvider() {
+    public AuthenticationProvider authenticationProvider(UserDetailsPasswordService userDetailsPasswordService) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService());
         authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setUserDetailsPasswordService(userDetailsPasswordService);
         return authProvider;
     }
 
@@ -48,10 +97,39 @@ public class ApplicationConfig {
         return config.getAuthenticationManager();
     }
 
-    // Add password encoder
+    // Add password encoder, BCrypt runs on its own bounded pool instead of request threads
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(); // Use BCryptPasswordEncoder to encode password
+        // Calibration is opt-in, it costs a few hashes at every startup and differs between nodes
+        int strength = PASSWORD_ENCODER_CALIBRATE
+                ? BCryptStrengthCalibrator.calibrate(
+                Duration.ofMillis(PASSWORD_ENCODER_TARGET_HASH_TIME_IN_MS),
+                PASSWORD_ENCODER_MINIMUM_STRENGTH,
+                PASSWORD_ENCODER_MAXIMUM_STRENGTH
+        )
+                : PASSWORD_ENCODER_STRENGTH;
+        LOGGER.info("Using BCrypt strength {}", strength);
+        int poolSize = PASSWORD_ENCODER_POOL_SIZE > 0
+                ? PASSWORD_ENCODER_POOL_SIZE
+                : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(
+                bCryptPasswordEncoder(strength),
+                poolSize,
+                PASSWORD_ENCODER_QUEUE_CAPACITY,
+                PASSWORD_ENCODER_MAX_WAIT_IN_MS,
+                meterRegistry
+        );
+    }
+
+    // New hashes are stored as {bcrypt}..., hashes stored without a prefix are plain BCrypt
+    static PasswordEncoder bCryptPasswordEncoder(int strength) {
+        PasswordEncoder bCryptPasswordEncoder = new BCryptPasswordEncoder(strength);
+        DelegatingPasswordEncoder delegatingPasswordEncoder = new DelegatingPasswordEncoder(
+                "bcrypt",
+                Map.of("bcrypt", bCryptPasswordEncoder)
+        );
+        delegatingPasswordEncoder.setDefaultPasswordEncoderForMatches(bCryptPasswordEncoder);
+        return delegatingPasswordEncoder;
     }
 
     // Add RestTemplate
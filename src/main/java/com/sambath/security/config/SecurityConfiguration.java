@@ -2,9 +2,11 @@ package com.sambath.security.config;
 
 import com.sambath.security.jwt.JwtAuthenticationFilter;
 import com.sambath.security.oauth2.CustomOAuth2UserService;
-import com.sambath.security.oauth2.HttpCookieOAuth2AuthorizationRequestRepository;
 import com.sambath.security.oauth2.OAuth2AuthenticationFailureHandler;
 import com.sambath.security.oauth2.OAuth2AuthenticationSuccessHandler;
+import com.sambath.security.oauth2.OAuth2AuthorizationRequestRepository;
+import com.sambath.security.oauth2.OAuth2ProviderHttpClient;
+import com.sambath.security.user.entity.Role;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -22,10 +24,11 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class SecurityConfiguration {
     private final JwtAuthenticationFilter jwtAuthFilter;
     private final AuthenticationProvider authenticationProvider;
-    private final HttpCookieOAuth2AuthorizationRequestRepository httpCookieOAuth2AuthorizationRequestRepository;
+    private final OAuth2AuthorizationRequestRepository authorizationRequestRepository;
     private final OAuth2AuthenticationSuccessHandler oAuth2AuthenticationSuccessHandler;
     private final OAuth2AuthenticationFailureHandler oAuth2AuthenticationFailureHandler;
     private final CustomOAuth2UserService customOAuth2UserService;
+    private final OAuth2ProviderHttpClient oAuth2ProviderHttpClient;
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
@@ -34,6 +37,10 @@ public class SecurityConfiguration {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/v1/auth/**").permitAll()
                         .requestMatchers("/api/v1/oauth2/**").permitAll()
+                        // Only the health check is public, metrics and the other endpoints reveal internals
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasAuthority(Role.ADMIN.name())
+                        .requestMatchers("/api/v1/admin/**").hasAuthority(Role.ADMIN.name())
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session
@@ -44,11 +51,14 @@ public class SecurityConfiguration {
                 .oauth2Login(oauth2 -> oauth2
                         .authorizationEndpoint(authorization -> authorization
                                 .baseUri("/api/v1/oauth2/authorize")
-                                .authorizationRequestRepository(httpCookieOAuth2AuthorizationRequestRepository)
+                                .authorizationRequestRepository(authorizationRequestRepository)
                         )
                         .redirectionEndpoint(redirection -> redirection
                                 .baseUri("/api/v1/oauth2/callback/*")
                         )
+                        .tokenEndpoint(token -> token
+                                .accessTokenResponseClient(oAuth2ProviderHttpClient.accessTokenResponseClient())
+                        )
                         .userInfoEndpoint(userInfo -> userInfo
                                 .userService(customOAuth2UserService)
                         )
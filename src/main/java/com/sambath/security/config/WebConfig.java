@@ -0,0 +1,20 @@
+package com.sambath.security.config;
+
+import com.sambath.security.ratelimit.ConcurrencyLimitInterceptor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+    private final ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Shed load on the auth endpoints before it queues up in the service layer
+        registry.addInterceptor(concurrencyLimitInterceptor)
+                .addPathPatterns("/api/v1/auth/**");
+    }
+}
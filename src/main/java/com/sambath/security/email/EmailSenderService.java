@@ -1,5 +1,6 @@
 package com.sambath.security.email;
 
+import com.sambath.security.metrics.AuthMetrics;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.AllArgsConstructor;
@@ -10,15 +11,19 @@ import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.TimeUnit;
+
 @Service
 @AllArgsConstructor
 public class EmailSenderService implements EmailSender {
     private final static Logger LOGGER = LoggerFactory
             .getLogger(EmailSenderService.class);
     private final JavaMailSender mailSender;
+    private final AuthMetrics authMetrics;
     @Override
     @Async
     public void send(String to, String email) {
+        long start = System.nanoTime();
         try {
             MimeMessage mimeMessage = mailSender.createMimeMessage();
             MimeMessageHelper helper =
@@ -30,6 +35,8 @@ public class EmailSenderService implements EmailSender {
         } catch (MessagingException e) {
             LOGGER.error("failed to send email", e);
             throw new IllegalStateException("failed to send email");
+        } finally {
+            authMetrics.emailSend().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 }
@@ -0,0 +1,14 @@
+package com.sambath.security.exception;
+
+public class TooManyRequestsException extends RuntimeException {
+    private final long retryAfterInSec;
+
+    public TooManyRequestsException(String message, long retryAfterInSec) {
+        super(message);
+        this.retryAfterInSec = retryAfterInSec;
+    }
+
+    public long getRetryAfterInSec() {
+        return retryAfterInSec;
+    }
+}
@@ -0,0 +1,54 @@
+package com.sambath.security.jfr;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+// Admin only, see SecurityConfiguration
+@RestController
+@RequestMapping("/api/v1/admin/jfr")
+@RequiredArgsConstructor
+public class FlightRecordingController {
+    private final FlightRecordingService flightRecordingService;
+
+    @PostMapping("/start")
+    public ResponseEntity<Map<String, Object>> start(
+            @RequestParam(name = "durationInSec", defaultValue = "0") long durationInSec
+    ) {
+        return ResponseEntity.ok(flightRecordingService.start(durationInSec));
+    }
+
+    @PostMapping("/stop")
+    public ResponseEntity<Map<String, Object>> stop() {
+        return ResponseEntity.ok(flightRecordingService.stop());
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(flightRecordingService.status());
+    }
+
+    @GetMapping("/download")
+    public ResponseEntity<Resource> download() {
+        Path file = flightRecordingService.finishedRecording();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(file.getFileName().toString())
+                        .build()
+                        .toString())
+                .body(new FileSystemResource(file));
+    }
+}
@@ -0,0 +1,121 @@
+package com.sambath.security.jfr;
+
+import com.sambath.security.exception.BadRequestException;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Map;
+
+// At most one on-demand flight recording at a time, bounded in duration and size.
+// The JDK writes the .jfr file when the recording stops, either on request or when the duration runs out.
+@Service
+public class FlightRecordingService {
+    private final static Logger LOGGER = LoggerFactory.getLogger(FlightRecordingService.class);
+
+    private final Path directory;
+    private final Duration maxDuration;
+    private final long maxSizeInBytes;
+    // Guarded by this
+    private Recording recording;
+    private Path file;
+
+    public FlightRecordingService(
+            @Value("${app.jfr.directory}") Path directory,
+            @Value("${app.jfr.max-duration-in-sec}") long maxDurationInSec,
+            @Value("${app.jfr.max-size-in-mb}") long maxSizeInMb
+    ) {
+        this.directory = directory;
+        this.maxDuration = Duration.ofSeconds(maxDurationInSec);
+        this.maxSizeInBytes = maxSizeInMb * 1024 * 1024;
+    }
+
+    // Start a recording with the JDK profile settings plus the auth events, never longer than the maximum
+    public synchronized Map<String, Object> start(long durationInSec) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new BadRequestException("A recording is already running");
+        }
+        closeRecording();
+        Duration duration = durationInSec > 0 && durationInSec < maxDuration.getSeconds()
+                ? Duration.ofSeconds(durationInSec)
+                : maxDuration;
+        try {
+            Files.createDirectories(directory);
+            Path destination = directory.resolve("auth-" + System.currentTimeMillis() + ".jfr");
+            Recording newRecording = new Recording(Configuration.getConfiguration("profile"));
+            newRecording.setName("auth");
+            newRecording.setDuration(duration);
+            newRecording.setMaxSize(maxSizeInBytes);
+            newRecording.setToDisk(true);
+            newRecording.setDestination(destination);
+            newRecording.start();
+            recording = newRecording;
+            file = destination;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("JFR profile configuration is not available", e);
+        }
+        LOGGER.info("Started flight recording to {} for {}", file, duration);
+        return status();
+    }
+
+    // Stop the running recording, its file is written before this returns
+    public synchronized Map<String, Object> stop() {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            throw new BadRequestException("No recording is running");
+        }
+        recording.stop();
+        LOGGER.info("Stopped flight recording to {}", file);
+        return status();
+    }
+
+    // File of the last finished recording
+    public synchronized Path finishedRecording() {
+        if (recording == null || file == null || !Files.exists(file)) {
+            throw new BadRequestException("No recording available");
+        }
+        if (recording.getState() == RecordingState.RUNNING) {
+            throw new BadRequestException("Recording is still running");
+        }
+        return file;
+    }
+
+    public synchronized Map<String, Object> status() {
+        if (recording == null) {
+            return Map.of("state", "NONE");
+        }
+        return Map.of(
+                "state", recording.getState().name(),
+                "duration", String.valueOf(recording.getDuration()),
+                "maxSizeInBytes", recording.getMaxSize()
+        );
+    }
+
+    @PreDestroy
+    public synchronized void closeRecording() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete flight recording {}", file, e);
+            }
+            file = null;
+        }
+    }
+}
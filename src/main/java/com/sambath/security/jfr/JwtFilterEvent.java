@@ -0,0 +1,22 @@
+package com.sambath.security.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.sambath.security.JwtFilter")
+@Label("JWT Filter")
+@Category({"Auth", "JWT"})
+@Description("Authentication of a request from its bearer token")
+@StackTrace(false)
+public class JwtFilterEvent extends jdk.jfr.Event {
+    @Label("Outcome")
+    @Description("authenticated, invalid, shed or failed")
+    public String outcome;
+
+    @Label("User Lookup")
+    @Description("Whether the user was loaded through the user details service")
+    public boolean userLookup;
+}
@@ -0,0 +1,27 @@
+package com.sambath.security.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("com.sambath.security.PasswordHash")
+@Label("Password Hash")
+@Category({"Auth", "Password"})
+@Description("Password encode or match on the password encoder pool")
+@StackTrace(false)
+public class PasswordHashEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Outcome")
+    @Description("match, mismatch, encoded, rejected or timeout")
+    public String outcome;
+
+    @Label("Queue Time")
+    @Description("Time spent waiting for a pool thread")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queueTime;
+}
@@ -0,0 +1,47 @@
+package com.sambath.security.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.Supplier;
+
+@Name("com.sambath.security.RepositoryCall")
+@Label("Repository Call")
+@Category({"Auth", "Repository"})
+@Description("Repository or token store call made by the authentication service")
+@StackTrace(false)
+public class RepositoryCallEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Outcome")
+    @Description("ok, or the simple name of the exception thrown")
+    public String outcome;
+
+    // Run the call inside an event named after the operation
+    public static <T> T record(String operation, Supplier<T> call) {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        event.begin();
+        try {
+            T result = call.get();
+            event.outcome = "ok";
+            return result;
+        } catch (RuntimeException e) {
+            event.outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.operation = operation;
+            event.commit();
+        }
+    }
+
+    public static void record(String operation, Runnable call) {
+        record(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,21 @@
+package com.sambath.security.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.sambath.security.TokenParse")
+@Label("Token Parse")
+@Category({"Auth", "JWT"})
+@Description("Verification of an access or refresh token")
+@StackTrace(false)
+public class TokenParseEvent extends jdk.jfr.Event {
+    @Label("Token Type")
+    public String tokenType;
+
+    @Label("Outcome")
+    @Description("ok, expired, bad_signature or malformed")
+    public String outcome;
+}
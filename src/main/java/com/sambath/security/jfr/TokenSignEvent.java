@@ -0,0 +1,20 @@
+package com.sambath.security.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.sambath.security.TokenSign")
+@Label("Token Sign")
+@Category({"Auth", "JWT"})
+@Description("Issuance of an access or refresh token")
+@StackTrace(false)
+public class TokenSignEvent extends jdk.jfr.Event {
+    @Label("Token Type")
+    public String tokenType;
+
+    @Label("Algorithm")
+    public String algorithm;
+}
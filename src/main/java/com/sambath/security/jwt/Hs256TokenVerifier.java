@@ -0,0 +1,257 @@
+package com.sambath.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+// Allocation-lean verifier for the HS256 tokens minted by JwtUtil.
+// It only accepts the exact shape JJWT writes ({"alg":"HS256"} header and a flat JSON object of
+// strings, integers and booleans) and returns null for anything else, including every rejection,
+// so the caller falls back to JJWT and accept/reject decisions stay identical.
+public class Hs256TokenVerifier {
+    // Base64url of {"alg":"HS256"}, the only header JJWT writes for signWith(key, HS256)
+    private static final String HEADER = "eyJhbGciOiJIUzI1NiJ9";
+    private static final int PAYLOAD_START = HEADER.length() + 1;
+    private static final int SIGNATURE_LENGTH = 32;
+    private static final Base64.Decoder BASE64URL = Base64.getUrlDecoder();
+
+    // Mac is not thread-safe, so each thread keeps its own initialized instance
+    private final ThreadLocal<Mac> mac;
+
+    public Hs256TokenVerifier(Key key) {
+        SecretKeySpec secretKey = new SecretKeySpec(key.getEncoded(), "HmacSHA256");
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance("HmacSHA256");
+                instance.init(secretKey);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+
+    // Return verified claims, or null if the token has to be handled by JJWT
+    public Claims verify(String token) {
+        return verify(token, System.currentTimeMillis());
+    }
+
+    Claims verify(String token, long nowMillis) {
+        if (token == null
+                || !token.startsWith(HEADER)
+                || token.length() <= PAYLOAD_START
+                || token.charAt(HEADER.length()) != '.'
+                || token.indexOf('=') >= 0) {
+            return null;
+        }
+        int signatureStart = token.indexOf('.', PAYLOAD_START) + 1;
+        if (signatureStart == 0 || token.indexOf('.', signatureStart) >= 0) {
+            return null;
+        }
+        byte[] ascii = token.getBytes(StandardCharsets.US_ASCII);
+
+        // Check the signature before looking at the payload
+        byte[] signature;
+        byte[] payload;
+        try {
+            signature = BASE64URL.decode(Arrays.copyOfRange(ascii, signatureStart, ascii.length));
+            payload = BASE64URL.decode(Arrays.copyOfRange(ascii, PAYLOAD_START, signatureStart - 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (signature.length != SIGNATURE_LENGTH) {
+            return null;
+        }
+        Mac hmac = mac.get();
+        hmac.update(ascii, 0, signatureStart - 1);
+        if (!MessageDigest.isEqual(hmac.doFinal(), signature)) {
+            return null;
+        }
+
+        Claims claims = FlatJsonReader.read(payload);
+        if (claims == null || claims.containsKey(Claims.NOT_BEFORE)) {
+            return null;
+        }
+        Object issuedAt = claims.get(Claims.ISSUED_AT);
+        if (issuedAt != null && !(issuedAt instanceof Number)) {
+            return null;
+        }
+        Object expiration = claims.get(Claims.EXPIRATION);
+        if (expiration != null) {
+            // Same rule as JJWT: the token is rejected once now is after exp
+            if (!(expiration instanceof Number) || nowMillis > ((Number) expiration).longValue() * 1000) {
+                return null;
+            }
+        }
+        return claims;
+    }
+
+    // Whether the token header names a key id, headers the flat reader cannot read count as having none
+    static boolean hasKeyId(String token) {
+        int headerEnd = token.indexOf('.');
+        if (headerEnd <= 0) {
+            return false;
+        }
+        try {
+            Claims header = FlatJsonReader.read(BASE64URL.decode(token.substring(0, headerEnd)));
+            return header != null && header.containsKey(JwsHeader.KEY_ID);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Reads a flat JSON object of strings, integers and booleans into claims.
+    // Anything else (escapes, non-ASCII, null, nested values, fractions, leading zeros) yields null.
+    private static final class FlatJsonReader {
+        private static final int MAX_DIGITS = 18;
+        private final byte[] json;
+        private int position;
+
+        private FlatJsonReader(byte[] json) {
+            this.json = json;
+        }
+
+        static Claims read(byte[] json) {
+            // JJWT only parses the payload as claims when it starts with '{' and ends with '}'
+            if (json.length < 2 || json[0] != '{' || json[json.length - 1] != '}') {
+                return null;
+            }
+            return new FlatJsonReader(json).readObject();
+        }
+
+        private Claims readObject() {
+            Claims claims = Jwts.claims();
+            position = 1;
+            skipWhitespace();
+            if (peek() == '}') {
+                return position == json.length - 1 ? claims : null;
+            }
+            while (true) {
+                if (peek() != '"') {
+                    return null;
+                }
+                String name = readString();
+                if (name == null) {
+                    return null;
+                }
+                skipWhitespace();
+                if (peek() != ':') {
+                    return null;
+                }
+                position++;
+                skipWhitespace();
+                Object value = readValue();
+                if (value == null) {
+                    return null;
+                }
+                claims.put(name, value);
+                skipWhitespace();
+                int next = peek();
+                position++;
+                if (next == '}') {
+                    return position == json.length ? claims : null;
+                }
+                if (next != ',') {
+                    return null;
+                }
+                skipWhitespace();
+            }
+        }
+
+        private Object readValue() {
+            int next = peek();
+            if (next == '"') {
+                return readString();
+            }
+            if (next == '-' || (next >= '0' && next <= '9')) {
+                return readNumber();
+            }
+            if (next == 't') {
+                return readLiteral("true", Boolean.TRUE);
+            }
+            if (next == 'f') {
+                return readLiteral("false", Boolean.FALSE);
+            }
+            return null;
+        }
+
+        private String readString() {
+            int start = ++position;
+            while (position < json.length) {
+                byte b = json[position];
+                if (b == '"') {
+                    return new String(json, start, position++ - start, StandardCharsets.US_ASCII);
+                }
+                // Escapes, control characters and non-ASCII bytes are left to Jackson
+                if (b == '\\' || b < 0x20) {
+                    return null;
+                }
+                position++;
+            }
+            return null;
+        }
+
+        private Object readNumber() {
+            boolean negative = false;
+            if (peek() == '-') {
+                negative = true;
+                position++;
+            }
+            int start = position;
+            long value = 0;
+            while (position < json.length && json[position] >= '0' && json[position] <= '9') {
+                value = value * 10 + (json[position++] - '0');
+            }
+            int digits = position - start;
+            if (digits == 0 || digits > MAX_DIGITS || (digits > 1 && json[start] == '0')) {
+                return null;
+            }
+            int next = peek();
+            if (next == '.' || next == 'e' || next == 'E') {
+                return null;
+            }
+            value = negative ? -value : value;
+            // Jackson maps integers that fit in an int to Integer, match it so claims compare equal
+            if (value == (int) value) {
+                return (int) value;
+            }
+            return value;
+        }
+
+        private Object readLiteral(String literal, Boolean value) {
+            if (position + literal.length() > json.length) {
+                return null;
+            }
+            for (int i = 0; i < literal.length(); i++) {
+                if (json[position + i] != literal.charAt(i)) {
+                    return null;
+                }
+            }
+            position += literal.length();
+            return value;
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length) {
+                byte b = json[position];
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        private int peek() {
+            return position < json.length ? json[position] : -1;
+        }
+    }
+}
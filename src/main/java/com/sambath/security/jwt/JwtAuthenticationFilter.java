@@ -1,11 +1,16 @@
 package com.sambath.security.jwt;
 
+import com.sambath.security.jfr.JwtFilterEvent;
+import com.sambath.security.ratelimit.ConcurrencyLimiters;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -19,10 +24,14 @@ import java.io.IOException;
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    private static final String USER_LOOKUP_ENDPOINT = "jwt-filter-user-lookup";
+
     // jwtUtil is a service that provides methods for generating and validating JWT tokens.
     private final JwtUtil jwtUtil;
     // UserDetailsService is an interface that loads user-specific data.
     private final UserDetailsService userDetailsService;
+    // Sheds requests with 503 when user lookups slow down instead of piling up threads on the database
+    private final ConcurrencyLimiters concurrencyLimiters;
 
     @Override
     protected void doFilterInternal(
@@ -32,32 +41,68 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     ) throws ServletException, IOException {
         final String authorizationHeader = request.getHeader("Authorization"); // Get authorization header
         final String jwt;
+        final Claims claims;
         final String userEmail;
         // If authorization header is null or does not start with "Bearer "
         if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
             filterChain.doFilter(request, response); // Continue the filter chain
             return;
         }
-        jwt = authorizationHeader.substring(7); // Get JWT
-        userEmail = jwtUtil.extractUsernameAccessToken(jwt); // Extract user email from JWT token;
-        if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            // Load user details from database
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
-            // If JWT token is valid
-            if (jwtUtil.isAccessTokenValid(jwt, userDetails)) {
-                // Create authentication token
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails,
-                        null,
-                        userDetails.getAuthorities()
-                );
-                // Set authentication token details
-                authToken.setDetails(
-                        new WebAuthenticationDetailsSource().buildDetails(request)
-                );
-                // Update SecurityContext using authentication token
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+        // Flight recorder event around the authentication part only, not the rest of the chain
+        JwtFilterEvent event = new JwtFilterEvent();
+        event.begin();
+        event.outcome = "failed";
+        try {
+            jwt = authorizationHeader.substring(7); // Get JWT
+            claims = jwtUtil.parseAccessToken(jwt); // Verify JWT token once and keep its claims
+            userEmail = claims.getSubject(); // Extract user email from JWT claims
+            event.outcome = "invalid";
+            if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails;
+                if (jwtUtil.isStatelessAccessToken() && jwtUtil.hasStatelessClaims(claims)) {
+                    // Build user details from the verified token without touching the database
+                    userDetails = jwtUtil.extractUserPrincipal(claims);
+                } else if (concurrencyLimiters.isEnabled()) {
+                    // Load user details from database within the concurrency limit
+                    event.userLookup = true;
+                    var permit = concurrencyLimiters.tryAcquire(USER_LOOKUP_ENDPOINT);
+                    if (permit == null) {
+                        event.outcome = "shed";
+                        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                        return;
+                    }
+                    try {
+                        userDetails = this.userDetailsService.loadUserByUsername(userEmail);
+                        permit.success();
+                    } catch (RuntimeException e) {
+                        permit.ignore();
+                        throw e;
+                    }
+                } else {
+                    // Load user details from database
+                    event.userLookup = true;
+                    userDetails = this.userDetailsService.loadUserByUsername(userEmail);
+                }
+                // If JWT token is valid
+                if (jwtUtil.isAccessTokenValid(claims, userDetails)) {
+                    // Create authentication token
+                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                            userDetails,
+                            null,
+                            userDetails.getAuthorities()
+                    );
+                    // Set authentication token details
+                    authToken.setDetails(
+                            new WebAuthenticationDetailsSource().buildDetails(request)
+                    );
+                    // Update SecurityContext using authentication token
+                    SecurityContextHolder.getContext().setAuthentication(authToken);
+                    event.outcome = "authenticated";
+                }
             }
+        } finally {
+            event.commit();
         }
         filterChain.doFilter(request, response); // Continue the filter chain
     }
@@ -0,0 +1,192 @@
+package com.sambath.security.jwt;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.sambath.security.config.AppProperties;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.SignatureException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Asymmetric access token keys: the active ES256 signing key and every verification key by kid.
+// Keys are decoded once at startup, lookups by kid are plain map reads.
+// HMAC access tokens issued before the switch to ES256 carry no kid, they are only accepted
+// while accept-legacy-hmac is on and legacy-hmac-sunset has not passed.
+@Component
+public class JwtKeyRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JwtKeyRegistry.class);
+
+    private final boolean asymmetric;
+    private final String activeKeyId;
+    private final PrivateKey activeSigningKey;
+    private final Map<String, PublicKey> verificationKeys;
+    private final Map<String, Object> jwks;
+    private final long jwksMaxAgeInSec;
+    // End of legacy HMAC acceptance, null when HMAC tokens without kid are rejected
+    private final Instant legacyHmacSunset;
+    private final Clock clock;
+
+    @Autowired
+    public JwtKeyRegistry(AppProperties appProperties) {
+        this(appProperties, Clock.systemUTC());
+    }
+
+    JwtKeyRegistry(AppProperties appProperties, Clock clock) {
+        AppProperties.Jwt jwt = appProperties.getAuth().getJwt();
+        this.jwksMaxAgeInSec = jwt.getJwksMaxAgeInSec();
+        this.clock = clock;
+        if ("HS256".equalsIgnoreCase(jwt.getSigningAlgorithm())) {
+            this.legacyHmacSunset = null;
+            this.asymmetric = false;
+            this.activeKeyId = null;
+            this.activeSigningKey = null;
+            this.verificationKeys = Map.of();
+            this.jwks = new JWKSet().toJSONObject();
+            return;
+        }
+        if (!"ES256".equalsIgnoreCase(jwt.getSigningAlgorithm())) {
+            throw new IllegalStateException("Unsupported JWT signing algorithm: " + jwt.getSigningAlgorithm());
+        }
+
+        Map<String, PublicKey> publicKeys = new HashMap<>();
+        PrivateKey signingKey = null;
+        String signingKeyId = jwt.getActiveKeyId();
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("EC");
+            if (jwt.getSigningKeys().isEmpty()) {
+                // Without configured keys every node would sign with its own key, only usable on a single node
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+                KeyPair keyPair = generator.generateKeyPair();
+                signingKeyId = UUID.randomUUID().toString();
+                signingKey = keyPair.getPrivate();
+                publicKeys.put(signingKeyId, keyPair.getPublic());
+                LOGGER.warn("No JWT signing keys configured, generated ephemeral ES256 key {}", signingKeyId);
+            } else {
+                for (AppProperties.SigningKey key : jwt.getSigningKeys()) {
+                    publicKeys.put(key.getKeyId(), keyFactory.generatePublic(
+                            new X509EncodedKeySpec(Decoders.BASE64.decode(key.getPublicKey()))));
+                    if (key.getKeyId().equals(signingKeyId)) {
+                        signingKey = keyFactory.generatePrivate(
+                                new PKCS8EncodedKeySpec(Decoders.BASE64.decode(key.getPrivateKey())));
+                    }
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid JWT signing key configuration", e);
+        }
+        if (signingKey == null) {
+            throw new IllegalStateException("No private key configured for active JWT key id " + signingKeyId);
+        }
+
+        if (jwt.isAcceptLegacyHmac()) {
+            if (jwt.getLegacyHmacSunset() == null) {
+                throw new IllegalStateException("app.auth.jwt.legacy-hmac-sunset is required with accept-legacy-hmac");
+            }
+            if (!clock.instant().isBefore(jwt.getLegacyHmacSunset())) {
+                LOGGER.warn("Legacy HMAC access tokens are past their sunset {}, turn off accept-legacy-hmac",
+                        jwt.getLegacyHmacSunset());
+            }
+            this.legacyHmacSunset = jwt.getLegacyHmacSunset();
+        } else {
+            this.legacyHmacSunset = null;
+        }
+
+        this.asymmetric = true;
+        this.activeKeyId = signingKeyId;
+        this.activeSigningKey = signingKey;
+        this.verificationKeys = Map.copyOf(publicKeys);
+        this.jwks = buildJwks(verificationKeys);
+    }
+
+    public boolean isAsymmetric() {
+        return asymmetric;
+    }
+
+    public String getActiveKeyId() {
+        return activeKeyId;
+    }
+
+    public PrivateKey getActiveSigningKey() {
+        return activeSigningKey;
+    }
+
+    // Public JWK set of every verification key, built once
+    public Map<String, Object> getJwks() {
+        return jwks;
+    }
+
+    public long getJwksMaxAgeInSec() {
+        return jwksMaxAgeInSec;
+    }
+
+    // Whether HMAC access tokens without kid are still accepted in ES256 mode
+    public boolean acceptsLegacyHmac() {
+        return legacyHmacSunset != null && clock.instant().isBefore(legacyHmacSunset);
+    }
+
+    // Whether a legacy HMAC sunset is configured, whether or not it has passed
+    public boolean hasLegacyHmacSunset() {
+        return legacyHmacSunset != null;
+    }
+
+    // Resolve the verification key from the kid header, tokens without kid were signed with the HMAC secret
+    public SigningKeyResolver signingKeyResolver(Key hmacKey) {
+        return new SigningKeyResolverAdapter() {
+            @Override
+            public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                String keyId = header.getKeyId();
+                if (keyId == null) {
+                    if (!acceptsLegacyHmac()) {
+                        throw new SignatureException("JWT has no key id and legacy HMAC tokens are not accepted");
+                    }
+                    return hmacKey;
+                }
+                PublicKey key = verificationKeys.get(keyId);
+                if (key == null) {
+                    throw new SignatureException("Unknown JWT key id: " + keyId);
+                }
+                return key;
+            }
+        };
+    }
+
+    private static Map<String, Object> buildJwks(Map<String, PublicKey> keys) {
+        List<JWK> jwkList = new ArrayList<>();
+        keys.forEach((keyId, key) -> jwkList.add(new ECKey.Builder(Curve.P_256, (ECPublicKey) key)
+                .keyID(keyId)
+                .keyUse(KeyUse.SIGNATURE)
+                .algorithm(JWSAlgorithm.ES256)
+                .build()));
+        return new JWKSet(jwkList).toJSONObject();
+    }
+}
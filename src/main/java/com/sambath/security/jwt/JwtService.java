@@ -1,34 +1,45 @@
 package com.sambath.security.jwt;
 
 import com.sambath.security.auth.dto.JwtToken;
-import com.sambath.security.user.entity.RefreshToken;
-import com.sambath.security.user.entity.User;
-import com.sambath.security.user.repository.RefreshTokenRepository;
+import com.sambath.security.jfr.RepositoryCallEvent;
+import com.sambath.security.oauth2.user.UserPrincipal;
+import com.sambath.security.user.service.RefreshTokenStore;
+import com.sambath.security.user.service.UserSnapshot;
 import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class JwtService {
     private final JwtUtil jwtUtil;
-    private final RefreshTokenRepository refreshTokenRepository;
+    private final RefreshTokenStore refreshTokenStore;
 
-    public JwtToken generateJwtToken(User user) {
+    public JwtToken generateJwtToken(UserSnapshot user) {
+        return generateJwtToken(user.id(), user);
+    }
+
+    // Issue tokens from the principal of an OAuth2 login, no managed User entity or user lookup needed
+    public JwtToken generateJwtToken(UserPrincipal userPrincipal) {
+        return generateJwtToken(userPrincipal.getId(), userPrincipal);
+    }
+
+    private JwtToken generateJwtToken(String userId, UserDetails user) {
         // Generate JWT access token
         var accessToken = jwtUtil.generateAccessToken(user);
 
-        // Build refresh token object
-        RefreshToken refreshToken = RefreshToken.builder()
-                .user(user)
-                .build();
-        // Save refresh token to database
-        refreshTokenRepository.save(refreshToken);
+        // Store refresh token
+        var refreshTokenId = RepositoryCallEvent.record("issueRefreshToken", () -> refreshTokenStore.issue(
+                userId,
+                LocalDateTime.now().plus(jwtUtil.getRefreshTokenExpiration())
+        ));
 
         // Generate extraClaims for refresh token
         Map<String, Object> extraClaims = Map.of(
-                "refreshTokenId", refreshToken.getId()
+                JwtUtil.REFRESH_TOKEN_ID_CLAIM, refreshTokenId
         );
 
         // Generate refresh token with extraClaims
@@ -1,50 +1,149 @@
 package com.sambath.security.jwt;
 
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.jfr.TokenParseEvent;
+import com.sambath.security.jfr.TokenSignEvent;
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.oauth2.user.UserPrincipal;
+import com.sambath.security.user.service.UserSnapshot;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
-import org.springframework.beans.factory.annotation.Value;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import java.security.Key;
+import java.time.Duration;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.concurrent.TimeUnit;
 
 @Service
+@RequiredArgsConstructor
 public class JwtUtil {
-    @Value("${app.auth.jwt.access-token-secret-key}")
-    private String ACCESS_TOKEN_SECRET_KEY;
-    @Value("${app.auth.jwt.refresh-token-secret-key}")
-    private String REFRESH_TOKEN_SECRET_KEY;
-    @Value("${app.auth.jwt.access-token-expiration-in-min}")
-    private long ACCESS_TOKEN_EXPIRATION_IN_MIN;
-    @Value("${app.auth.jwt.refresh-token-expiration-in-day}")
-    private long REFRESH_TOKEN_EXPIRATION_IN_DAY;
+    public static final String REFRESH_TOKEN_ID_CLAIM = "refreshTokenId";
+    public static final String USER_ID_CLAIM = "userId";
+    public static final String ROLE_CLAIM = "role";
+    public static final String ENABLED_CLAIM = "enabled";
+
+    private final AppProperties appProperties;
+    private final JwtKeyRegistry jwtKeyRegistry;
+    private final AuthMetrics authMetrics;
+
+    // app.auth.jwt
+    private AppProperties.Jwt jwt;
+
+    // Keys and parsers are built once, JwtParser is immutable and thread-safe
+    private Key accessTokenSignInKey;
+    private Key refreshTokenSignInKey;
+    private JwtParser accessTokenParser;
+    private JwtParser refreshTokenParser;
+    // Lean HS256 verifiers tried before JJWT, which still handles anything unusual and every rejection
+    private Hs256TokenVerifier accessTokenVerifier;
+    private Hs256TokenVerifier refreshTokenVerifier;
+    // Cache of already verified access tokens, null when disabled
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @PostConstruct
+    public void init() {
+        jwt = appProperties.getAuth().getJwt();
+        accessTokenSignInKey = getAccessTokenSignInKey();
+        refreshTokenSignInKey = getRefreshTokenSignInKey();
+        if (jwtKeyRegistry.isAsymmetric()) {
+            // Pick the verification key by kid, HMAC tokens issued before the switch stay valid until the legacy sunset
+            accessTokenParser = Jwts.parserBuilder()
+                    .setSigningKeyResolver(jwtKeyRegistry.signingKeyResolver(accessTokenSignInKey))
+                    .build();
+        } else {
+            accessTokenParser = Jwts.parserBuilder()
+                    .setSigningKey(accessTokenSignInKey)
+                    .build();
+        }
+        refreshTokenParser = Jwts.parserBuilder()
+                .setSigningKey(refreshTokenSignInKey)
+                .build();
+        accessTokenVerifier = new Hs256TokenVerifier(accessTokenSignInKey);
+        refreshTokenVerifier = new Hs256TokenVerifier(refreshTokenSignInKey);
+        if (jwt.getVerifiedTokenCache().isEnabled()) {
+            verifiedTokenCache = new VerifiedTokenCache(jwt.getVerifiedTokenCache().getMaximumSize());
+            authMetrics.monitorCache(verifiedTokenCache.getCache(), "verifiedTokens");
+        }
+    }
+
+    // Verify JWT access token and return all of its claims
+    public Claims parseAccessToken(String token) {
+        TokenParseEvent event = new TokenParseEvent();
+        event.tokenType = "access";
+        event.outcome = "ok";
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            if (verifiedTokenCache != null && isCacheable(token)) {
+                return verifiedTokenCache.get(token, this::verifyAccessToken);
+            }
+            return verifyAccessToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            event.outcome = authMetrics.tokenRejected(e).getTag();
+            throw e;
+        } finally {
+            authMetrics.accessTokenParse().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.commit();
+        }
+    }
+
+    // Verified token cache, null when app.auth.jwt.verified-token-cache.enabled is false
+    public VerifiedTokenCache getVerifiedTokenCache() {
+        return verifiedTokenCache;
+    }
+
+    // Verify JWT refresh token and return all of its claims
+    public Claims parseRefreshToken(String token) {
+        TokenParseEvent event = new TokenParseEvent();
+        event.tokenType = "refresh";
+        event.outcome = "ok";
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            Claims claims = refreshTokenVerifier.verify(token);
+            return claims != null ? claims : refreshTokenParser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            event.outcome = authMetrics.tokenRejected(e).getTag();
+            throw e;
+        } finally {
+            authMetrics.refreshTokenParse().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.commit();
+        }
+    }
 
     // Extract username from JWT access token
     public String extractUsernameAccessToken(String token) {
-        return extractClaim(token, getAccessTokenSignInKey(), Claims::getSubject);
+        return parseAccessToken(token).getSubject();
     }
 
     // Extract username from JWT refresh token
     public String extractUsernameRefreshToken(String token) {
-        return extractClaim(token, getRefreshTokenSignInKey(), Claims::getSubject);
+        return parseRefreshToken(token).getSubject();
     }
 
     // Extract refresh token id from refresh token
     public String extractRefreshTokenId(String token) {
-        return extractClaim(token, getRefreshTokenSignInKey(), Claims -> Claims.get("refreshTokenId", String.class));
+        return extractRefreshTokenId(parseRefreshToken(token));
     }
 
-    // Extract claim from JWT token
-    public <T> T extractClaim(String token, Key key, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token, key);
-        return claimsResolver.apply(claims);
+    // Extract refresh token id from verified refresh token claims
+    public String extractRefreshTokenId(Claims claims) {
+        return claims.get(REFRESH_TOKEN_ID_CLAIM, String.class);
     }
 
     // Generate JWT access token without extra claims
@@ -57,14 +156,39 @@ public class JwtUtil {
             Map<String, Object> extraClaims,
             UserDetails userDetails
     ) {
-        return Jwts
+        TokenSignEvent event = new TokenSignEvent();
+        event.begin();
+        long start = System.nanoTime();
+        JwtBuilder builder = Jwts
                 .builder()
-                .setClaims(extraClaims)
-                .setSubject(userDetails.getUsername())
+                .setClaims(extraClaims);
+        // In stateless mode embed everything the filter needs to authenticate without a user lookup
+        if (jwt.isStatelessAccessToken() && userDetails instanceof UserSnapshot user) {
+            builder.claim(USER_ID_CLAIM, user.id())
+                    .claim(ROLE_CLAIM, user.role().name())
+                    .claim(ENABLED_CLAIM, user.enabled());
+        } else if (jwt.isStatelessAccessToken() && userDetails instanceof UserPrincipal principal
+                && principal.getId() != null && principal.getRole() != null) {
+            builder.claim(USER_ID_CLAIM, principal.getId())
+                    .claim(ROLE_CLAIM, principal.getRole())
+                    .claim(ENABLED_CLAIM, principal.isEnabled());
+        }
+        builder.setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date((System.currentTimeMillis())))
-                .setExpiration(new Date((System.currentTimeMillis() + 1000 * 60 * ACCESS_TOKEN_EXPIRATION_IN_MIN)))
-                .signWith(getAccessTokenSignInKey(), SignatureAlgorithm.HS256)
-                .compact();
+                .setExpiration(new Date((System.currentTimeMillis() + 1000 * 60 * jwt.getAccessTokenExpirationInMin())));
+        if (jwtKeyRegistry.isAsymmetric()) {
+            // Other services verify ES256 access tokens with the public key published under this kid
+            builder.setHeaderParam(JwsHeader.KEY_ID, jwtKeyRegistry.getActiveKeyId())
+                    .signWith(jwtKeyRegistry.getActiveSigningKey(), SignatureAlgorithm.ES256);
+        } else {
+            builder.signWith(accessTokenSignInKey, SignatureAlgorithm.HS256);
+        }
+        String token = builder.compact();
+        authMetrics.accessTokenIssue().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        event.tokenType = "access";
+        event.algorithm = jwtKeyRegistry.isAsymmetric() ? "ES256" : "HS256";
+        event.commit();
+        return token;
     }
 
     // Generate JWT refresh token with extra claims
@@ -72,63 +196,105 @@ public class JwtUtil {
             Map<String, Object> extraClaims,
             UserDetails userDetails
     ) {
-        return Jwts
+        TokenSignEvent event = new TokenSignEvent();
+        event.begin();
+        long start = System.nanoTime();
+        String token = Jwts
                 .builder()
                 .setClaims(extraClaims)
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date((System.currentTimeMillis())))
                 .setExpiration(new Date((
-                        System.currentTimeMillis() + 1000 * 60 * 60 * 24 * REFRESH_TOKEN_EXPIRATION_IN_DAY
+                        System.currentTimeMillis() + 1000 * 60 * 60 * 24 * jwt.getRefreshTokenExpirationInDay()
                 )))
-                .signWith(getRefreshTokenSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(refreshTokenSignInKey, SignatureAlgorithm.HS256)
                 .compact();
+        authMetrics.refreshTokenIssue().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        event.tokenType = "refresh";
+        event.algorithm = "HS256";
+        event.commit();
+        return token;
+    }
+
+    // Lifetime of refresh tokens, also used as the expiration of their database rows
+    public Duration getRefreshTokenExpiration() {
+        return Duration.ofDays(jwt.getRefreshTokenExpirationInDay());
+    }
+
+    // Whether access tokens carry the user id, role and enabled flag so requests authenticate from the token alone
+    public boolean isStatelessAccessToken() {
+        return jwt.isStatelessAccessToken();
+    }
+
+    // Check if verified JWT access token claims carry the user id and role of a stateless access token
+    public boolean hasStatelessClaims(Claims claims) {
+        return claims.containsKey(USER_ID_CLAIM) && claims.containsKey(ROLE_CLAIM);
+    }
+
+    // Build user principal from verified stateless JWT access token claims
+    public UserPrincipal extractUserPrincipal(Claims claims) {
+        return new UserPrincipal(
+                claims.get(USER_ID_CLAIM, String.class),
+                claims.getSubject(),
+                null,
+                List.of(new SimpleGrantedAuthority(claims.get(ROLE_CLAIM, String.class))),
+                !Boolean.FALSE.equals(claims.get(ENABLED_CLAIM, Boolean.class))
+        );
     }
 
     // Check if JWT access token is valid
     public boolean isAccessTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsernameAccessToken(token);
-        return username.equals(userDetails.getUsername()) && !isAccessTokenExpired(token);
+        return isAccessTokenValid(parseAccessToken(token), userDetails);
+    }
+
+    // Check if verified JWT access token claims are valid for the user
+    public boolean isAccessTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !isExpired(claims);
     }
 
     // Check if JWT refresh token is valid
     public boolean isRefreshTokenValid(String token) {
-        return !isRefreshTokenExpired(token);
+        return isRefreshTokenValid(parseRefreshToken(token));
     }
 
-    // Check if JWT access token is expired
-    private boolean isAccessTokenExpired(String token) {
-        return extractExpiration(token, getAccessTokenSignInKey()).before(new Date());
+    // Check if verified JWT refresh token claims are valid
+    public boolean isRefreshTokenValid(Claims claims) {
+        return !isExpired(claims);
     }
 
     // Check if JWT refresh token is expired
     public boolean isRefreshTokenExpired(String token) {
-        return extractExpiration(token, getRefreshTokenSignInKey()).before(new Date());
+        return isExpired(parseRefreshToken(token));
+    }
+
+    // Check if verified JWT claims are expired
+    private boolean isExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
-    // Extract expiration date from JWT token
-    private Date extractExpiration(String token, Key key) {
-        return extractClaim(token, key, Claims::getExpiration);
+    // Legacy HMAC tokens are verified on every use, a cached entry would outlive the sunset
+    private boolean isCacheable(String token) {
+        return !jwtKeyRegistry.hasLegacyHmacSunset() || Hs256TokenVerifier.hasKeyId(token);
     }
 
-    // Extract all claims from JWT token
-    private Claims extractAllClaims(String token, Key key) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    // Verify JWT access token signature and expiration, falling back to JJWT when the lean verifier declines
+    private Claims verifyAccessToken(String token) {
+        // In ES256 mode the lean verifier only serves HMAC tokens while legacy HMAC is accepted
+        Claims claims = !jwtKeyRegistry.isAsymmetric() || jwtKeyRegistry.acceptsLegacyHmac()
+                ? accessTokenVerifier.verify(token)
+                : null;
+        return claims != null ? claims : accessTokenParser.parseClaimsJws(token).getBody();
     }
 
     // Get access token sign in key from secret key
     private Key getAccessTokenSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(ACCESS_TOKEN_SECRET_KEY);
+        byte[] keyBytes = Decoders.BASE64.decode(jwt.getAccessTokenSecretKey());
         return Keys.hmacShaKeyFor(keyBytes);
     }
 
     // Get refresh token sign in key from secret key
     private Key getRefreshTokenSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(REFRESH_TOKEN_SECRET_KEY);
+        byte[] keyBytes = Decoders.BASE64.decode(jwt.getRefreshTokenSecretKey());
         return Keys.hmacShaKeyFor(keyBytes);
     }
 }
@@ -0,0 +1,99 @@
+package com.sambath.security.jwt;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.jsonwebtoken.Claims;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Maps a digest of an already verified token to its claims.
+// Entries expire no later than the token's own exp, reads are lock-free and cached claims must be treated as read-only.
+public class VerifiedTokenCache {
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final Cache<TokenDigest, Claims> cache;
+
+    public VerifiedTokenCache(long maximumSize) {
+        this(maximumSize, Ticker.systemTicker());
+    }
+
+    VerifiedTokenCache(long maximumSize, Ticker ticker) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new UntilTokenExpiration(ticker))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    // Return cached claims for the token, or verify it and cache the result
+    public Claims get(String token, Function<String, Claims> verifier) {
+        TokenDigest digest = TokenDigest.of(token);
+        Claims claims = cache.getIfPresent(digest);
+        if (claims != null) {
+            return claims;
+        }
+        claims = verifier.apply(token);
+        // Only tokens with an expiration are cached, otherwise an entry would have no upper bound
+        if (claims.getExpiration() != null) {
+            cache.put(digest, claims);
+        }
+        return claims;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public Cache<TokenDigest, Claims> getCache() {
+        return cache;
+    }
+
+    // First 128 bits of the SHA-256 of the compact token, two longs instead of the whole token string
+    record TokenDigest(long high, long low) {
+        static TokenDigest of(String token) {
+            byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+            ByteBuffer buffer = ByteBuffer.wrap(hash);
+            return new TokenDigest(buffer.getLong(), buffer.getLong());
+        }
+    }
+
+    // Ticker readings have no fixed origin, so the wall clock is read once and exp is compared in ticker time
+    private static final class UntilTokenExpiration implements Expiry<TokenDigest, Claims> {
+        private final long epochNanosAtTickerZero;
+
+        UntilTokenExpiration(Ticker ticker) {
+            this.epochNanosAtTickerZero = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - ticker.read();
+        }
+
+        @Override
+        public long expireAfterCreate(TokenDigest key, Claims claims, long currentTime) {
+            long expiresAt = TimeUnit.MILLISECONDS.toNanos(claims.getExpiration().getTime()) - epochNanosAtTickerZero;
+            return Math.max(0, expiresAt - currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenDigest key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(TokenDigest key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
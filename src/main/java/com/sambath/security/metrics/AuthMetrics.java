@@ -0,0 +1,137 @@
+package com.sambath.security.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.security.SecurityException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Timers and failure counters of the auth pipeline, registered once so the hot paths only record.
+// Tags are limited to fixed values (token type, failure reason, OAuth2 registration id),
+// never user, token or IP values, to keep the number of series bounded.
+// Password hashing is timed by BoundedPasswordEncoder as auth.password.hash.
+@Component
+public class AuthMetrics {
+    public enum FailureReason {
+        EXPIRED("expired"),
+        BAD_SIGNATURE("bad_signature"),
+        MALFORMED("malformed"),
+        UNKNOWN_REFRESH_TOKEN("unknown_refresh_token"),
+        BAD_CREDENTIALS("bad_credentials"),
+        DISABLED("disabled");
+
+        private final String tag;
+
+        FailureReason(String tag) {
+            this.tag = tag;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    // Histogram bucket range, from a cached token check to a slow provider or mail server
+    private static final Duration MINIMUM_EXPECTED = Duration.ofNanos(10_000);
+    private static final Duration MAXIMUM_EXPECTED = Duration.ofSeconds(30);
+
+    private final MeterRegistry meterRegistry;
+    private final Timer accessTokenParse;
+    private final Timer refreshTokenParse;
+    private final Timer accessTokenIssue;
+    private final Timer refreshTokenIssue;
+    private final Timer userLookup;
+    private final Timer refreshRotation;
+    private final Timer emailSend;
+    private final Map<FailureReason, Counter> failures = new EnumMap<>(FailureReason.class);
+
+    public AuthMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.accessTokenParse = timer("auth.token.parse", "Token signature check and claims parsing", "type", "access");
+        this.refreshTokenParse = timer("auth.token.parse", "Token signature check and claims parsing", "type", "refresh");
+        this.accessTokenIssue = timer("auth.token.issue", "Token signing", "type", "access");
+        this.refreshTokenIssue = timer("auth.token.issue", "Token signing", "type", "refresh");
+        this.userLookup = timer("auth.user.lookup", "User loaded from the database on a cache miss");
+        this.refreshRotation = timer("auth.refresh.rotation", "Refresh token rotation including the new token pair");
+        this.emailSend = timer("auth.email.send", "Confirmation email delivery");
+        for (FailureReason reason : FailureReason.values()) {
+            failures.put(reason, Counter.builder("auth.failures")
+                    .description("Rejected authentication attempts by reason")
+                    .tag("reason", reason.tag)
+                    .register(meterRegistry));
+        }
+    }
+
+    public Timer accessTokenParse() {
+        return accessTokenParse;
+    }
+
+    public Timer refreshTokenParse() {
+        return refreshTokenParse;
+    }
+
+    public Timer accessTokenIssue() {
+        return accessTokenIssue;
+    }
+
+    public Timer refreshTokenIssue() {
+        return refreshTokenIssue;
+    }
+
+    public Timer userLookup() {
+        return userLookup;
+    }
+
+    public Timer refreshRotation() {
+        return refreshRotation;
+    }
+
+    public Timer emailSend() {
+        return emailSend;
+    }
+
+    // Timer of the user info request to an OAuth2 provider, tagged by registration id
+    public Timer oauth2UserInfo(String provider) {
+        return timer("auth.oauth2.userinfo", "User info request to the OAuth2 provider", "provider", provider);
+    }
+
+    // Publish size, hit, miss and eviction metrics of a Caffeine cache built with recordStats()
+    public void monitorCache(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    public void failure(FailureReason reason) {
+        failures.get(reason).increment();
+    }
+
+    // Count a rejected token by the kind of JJWT exception
+    public FailureReason tokenRejected(RuntimeException e) {
+        FailureReason reason;
+        if (e instanceof ExpiredJwtException) {
+            reason = FailureReason.EXPIRED;
+        } else if (e instanceof SecurityException) {
+            reason = FailureReason.BAD_SIGNATURE;
+        } else {
+            reason = FailureReason.MALFORMED;
+        }
+        failure(reason);
+        return reason;
+    }
+
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MINIMUM_EXPECTED)
+                .maximumExpectedValue(MAXIMUM_EXPECTED)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,231 @@
+package com.sambath.security.oauth2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Compact cookie encoding of an OAuth2AuthorizationRequest, replacing Java serialization.
+// Only the fields needed to finish the login are written as length-prefixed strings, deflated with a
+// dictionary of common OAuth2 strings and signed with HMAC-SHA256. The signature is checked before
+// anything is inflated or parsed, so a tampered or foreign cookie is rejected without doing any work.
+// The authorization request URI is not stored, the builder derives it again from the other fields.
+@Component
+public class AuthorizationRequestCookieCodec {
+    private final static Logger LOGGER = LoggerFactory.getLogger(AuthorizationRequestCookieCodec.class);
+
+    private static final byte VERSION = 1;
+    private static final int MAC_LENGTH = 32;
+    // Upper bound of an inflated request, well above any real one
+    private static final int MAX_INFLATED_LENGTH = 16 * 1024;
+    private static final Base64.Encoder BASE64URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64URL_DECODER = Base64.getUrlDecoder();
+    // Strings that show up in most requests, deflate refers back to them instead of writing them out
+    private static final byte[] DICTIONARY = String.join("",
+            "registration_id", "nonce", "code_challenge_method", "S256", "code_challenge",
+            "openid", "profile", "email", "public_profile", "user:email", "read:user",
+            "/api/v1/oauth2/callback/", "http://localhost:8080", "https://",
+            "https://www.facebook.com/v3.0/dialog/oauth", "https://github.com/login/oauth/authorize",
+            "https://accounts.google.com/o/oauth2/v2/auth", "google", "facebook", "github",
+            ".apps.googleusercontent.com"
+    ).getBytes(StandardCharsets.US_ASCII);
+
+    private final ThreadLocal<Mac> mac;
+
+    public AuthorizationRequestCookieCodec(
+            @Value("${app.oauth2.authorization-request-cookie-secret:}") String secret
+    ) {
+        byte[] key;
+        if (secret == null || secret.isBlank()) {
+            // Cookies live for minutes, a key per start only fails logins that are in flight during a restart
+            LOGGER.warn("No app.oauth2.authorization-request-cookie-secret configured, using a random key."
+                    + " Set it when running more than one node.");
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        } else {
+            key = Base64.getDecoder().decode(secret);
+        }
+        SecretKeySpec secretKey = new SecretKeySpec(key, "HmacSHA256");
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance("HmacSHA256");
+                instance.init(secretKey);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+
+    public String encode(OAuth2AuthorizationRequest request) {
+        if (!AuthorizationGrantType.AUTHORIZATION_CODE.equals(request.getGrantType())) {
+            throw new IllegalArgumentException("Only authorization code requests are supported");
+        }
+        ByteArrayOutputStream plain = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(plain)) {
+            out.writeUTF(request.getAuthorizationUri());
+            out.writeUTF(request.getClientId());
+            writeNullable(out, request.getRedirectUri());
+            writeNullable(out, request.getState());
+            out.writeShort(request.getScopes().size());
+            for (String scope : request.getScopes()) {
+                out.writeUTF(scope);
+            }
+            writeMap(out, request.getAdditionalParameters());
+            writeMap(out, request.getAttributes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        byte[] compressed = deflate(plain.toByteArray());
+        // Version byte, deflated fields, signature over both
+        byte[] cookie = new byte[1 + compressed.length + MAC_LENGTH];
+        cookie[0] = VERSION;
+        System.arraycopy(compressed, 0, cookie, 1, compressed.length);
+        Mac hmac = mac.get();
+        hmac.update(cookie, 0, compressed.length + 1);
+        byte[] signature = hmac.doFinal();
+        System.arraycopy(signature, 0, cookie, compressed.length + 1, MAC_LENGTH);
+        return BASE64URL_ENCODER.encodeToString(cookie);
+    }
+
+    // Decode a cookie written by encode, or return null if it is malformed, tampered with or signed with another key
+    public OAuth2AuthorizationRequest decode(String value) {
+        byte[] cookie;
+        try {
+            cookie = BASE64URL_DECODER.decode(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (cookie.length <= 1 + MAC_LENGTH || cookie[0] != VERSION) {
+            return null;
+        }
+        int signatureStart = cookie.length - MAC_LENGTH;
+        Mac hmac = mac.get();
+        hmac.update(cookie, 0, signatureStart);
+        if (!MessageDigest.isEqual(hmac.doFinal(), Arrays.copyOfRange(cookie, signatureStart, cookie.length))) {
+            return null;
+        }
+
+        byte[] plain = inflate(cookie, 1, signatureStart - 1);
+        if (plain == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain))) {
+            OAuth2AuthorizationRequest.Builder builder = OAuth2AuthorizationRequest.authorizationCode()
+                    .authorizationUri(in.readUTF())
+                    .clientId(in.readUTF())
+                    .redirectUri(readNullable(in))
+                    .state(readNullable(in));
+            int scopeCount = in.readUnsignedShort();
+            Set<String> scopes = new LinkedHashSet<>(scopeCount * 2);
+            for (int i = 0; i < scopeCount; i++) {
+                scopes.add(in.readUTF());
+            }
+            return builder.scopes(scopes)
+                    .additionalParameters(readMap(in))
+                    .attributes(readMap(in))
+                    .build();
+        } catch (IOException | IllegalArgumentException e) {
+            // Signed by us but not readable, e.g. written by an incompatible version
+            return null;
+        }
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length);
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input, int offset, int length) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(input, offset, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 4);
+            byte[] buffer = new byte[512];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                out.write(buffer, 0, inflated);
+                if (out.size() > MAX_INFLATED_LENGTH) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, Object> map) throws IOException {
+        out.writeShort(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (!(entry.getValue() instanceof String value)) {
+                throw new IllegalArgumentException("Only string values are supported, got " + entry.getKey());
+            }
+            out.writeUTF(entry.getKey());
+            out.writeUTF(value);
+        }
+    }
+
+    private static Map<String, Object> readMap(DataInputStream in) throws IOException {
+        int size = in.readUnsignedShort();
+        Map<String, Object> map = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            map.put(in.readUTF(), in.readUTF());
+        }
+        return map;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.sambath.security.oauth2;
+
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+
+import java.time.Duration;
+
+// Server-side storage of pending authorization requests keyed by their state parameter.
+// Implementations must be bounded and drop entries once their time to live has passed.
+// A shared backend for clustered deployments can store AuthorizationRequestCookieCodec output.
+public interface AuthorizationRequestStore {
+    void save(String state, OAuth2AuthorizationRequest authorizationRequest, Duration timeToLive);
+
+    // The pending request, or null if unknown or expired
+    OAuth2AuthorizationRequest get(String state);
+
+    // Remove and return the pending request, only one of several concurrent callers gets it
+    OAuth2AuthorizationRequest remove(String state);
+}
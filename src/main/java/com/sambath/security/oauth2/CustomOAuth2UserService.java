@@ -2,32 +2,60 @@ package com.sambath.security.oauth2;
 
 import com.sambath.security.exception.BadRequestException;
 import com.sambath.security.exception.OAuth2AuthenticationProcessingException;
+import com.sambath.security.jfr.RepositoryCallEvent;
+import com.sambath.security.metrics.AuthMetrics;
 import com.sambath.security.oauth2.user.OAuth2UserInfo;
 import com.sambath.security.oauth2.user.OAuth2UserInfoFactory;
 import com.sambath.security.oauth2.user.UserPrincipal;
 import com.sambath.security.user.entity.AuthProvider;
-import com.sambath.security.user.entity.Role;
 import com.sambath.security.user.entity.User;
 import com.sambath.security.user.repository.UserRepository;
+import com.sambath.security.user.service.UserDetailsCache;
+import com.sambath.security.user.service.UserSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
 public class CustomOAuth2UserService extends DefaultOAuth2UserService {
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
+    private final AuthMetrics authMetrics;
+    private final OAuth2ProviderHttpClient oAuth2ProviderHttpClient;
+    private final Validator validator;
+
+    // User info requests go through the pooled client with per-provider timeouts
+    @PostConstruct
+    public void init() {
+        setRestOperations(oAuth2ProviderHttpClient.userInfoRestTemplate());
+    }
 
     @Override
     public OAuth2User loadUser(OAuth2UserRequest oAuth2UserRequest) throws OAuth2AuthenticationException {
-        OAuth2User oAuth2User = super.loadUser(oAuth2UserRequest);
+        // Time the user info request to the provider
+        long start = System.nanoTime();
+        OAuth2User oAuth2User;
+        try {
+            oAuth2User = super.loadUser(oAuth2UserRequest);
+        } finally {
+            authMetrics.oauth2UserInfo(oAuth2UserRequest.getClientRegistration().getRegistrationId())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
         try {
             return processOAuth2User(oAuth2UserRequest, oAuth2User);
         } catch (AuthenticationException ex) {
@@ -47,42 +75,53 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
         if(oAuth2UserInfo.getEmail() == null) {
             throw new OAuth2AuthenticationProcessingException("Email not found from OAuth2 provider");
         }
+        validate(oAuth2UserInfo);
 
-        Optional<User> userOptional = userRepository.findByEmail(oAuth2UserInfo.getEmail());
-        User user;
-        if(userOptional.isPresent()) {
-            user = userOptional.get();
-            if(!user.getProvider().equals(AuthProvider.valueOf(oAuth2UserRequest.getClientRegistration().getRegistrationId()))) {
-                throw new BadRequestException("Looks like you're signed up with " +
-                        user.getProvider() + " account. Please use your " + user.getProvider() +
-                        " account to login.");
-            }
-            user = updateExistingUser(user, oAuth2UserInfo);
-        } else {
-            user = registerNewUser(oAuth2UserRequest, oAuth2UserInfo);
+        AuthProvider provider = AuthProvider.valueOf(oAuth2UserRequest.getClientRegistration().getRegistrationId());
+        User user = upsertUser(provider, oAuth2UserInfo);
+        if(!user.getProvider().equals(provider)) {
+            throw new BadRequestException("Looks like you're signed up with " +
+                    user.getProvider() + " account. Please use your " + user.getProvider() +
+                    " account to login.");
         }
 
         return UserPrincipal.create(user, oAuth2User.getAttributes());
     }
 
-    private User registerNewUser(OAuth2UserRequest oAuth2UserRequest, OAuth2UserInfo oAuth2UserInfo) {
-        User user = User.builder()
-                .provider(AuthProvider.valueOf(oAuth2UserRequest.getClientRegistration().getRegistrationId()))
-                .providerId(oAuth2UserInfo.getId())
-                .name(oAuth2UserInfo.getName())
-                .firstName(oAuth2UserInfo.getFirstName())
-                .lastName(oAuth2UserInfo.getLastName())
-                .email(oAuth2UserInfo.getEmail())
-                .imageUrl(oAuth2UserInfo.getImageUrl())
-                .role(Role.USER)
-                .enabled(true)
-                .build();
-        return userRepository.save(user);
+    // The upsert is native SQL and skips entity validation, so check the provider's values against the User constraints
+    private void validate(OAuth2UserInfo oAuth2UserInfo) {
+        Set<ConstraintViolation<User>> violations = new LinkedHashSet<>();
+        violations.addAll(validator.validateValue(User.class, "name", oAuth2UserInfo.getName()));
+        violations.addAll(validator.validateValue(User.class, "email", oAuth2UserInfo.getEmail()));
+        if (!violations.isEmpty()) {
+            ConstraintViolation<User> violation = violations.iterator().next();
+            throw new OAuth2AuthenticationProcessingException("Invalid " + violation.getPropertyPath()
+                    + " from OAuth2 provider: " + violation.getMessage());
+        }
     }
 
-    private User updateExistingUser(User existingUser, OAuth2UserInfo oAuth2UserInfo) {
-        existingUser.setName(oAuth2UserInfo.getName());
-        existingUser.setImageUrl(oAuth2UserInfo.getImageUrl());
-        return userRepository.save(existingUser);
+    // Register or update the user in one round trip, an unchanged repeat login writes nothing
+    private User upsertUser(AuthProvider provider, OAuth2UserInfo oAuth2UserInfo) {
+        String email = oAuth2UserInfo.getEmail();
+        User user = RepositoryCallEvent.record("upsertOAuth2User", () -> userRepository.upsertOAuth2User(
+                        UUID.randomUUID().toString(),
+                        oAuth2UserInfo.getName(),
+                        oAuth2UserInfo.getFirstName(),
+                        oAuth2UserInfo.getLastName(),
+                        email,
+                        oAuth2UserInfo.getImageUrl(),
+                        provider.name(),
+                        oAuth2UserInfo.getId()
+                ))
+                // Another login of the same user inserted the row after this statement started
+                .or(() -> userRepository.findByEmail(email))
+                .orElseThrow(() -> new OAuth2AuthenticationProcessingException("User could not be saved"));
+
+        // The cached user only goes stale when the upsert changed it
+        UserDetails cached = userDetailsCache.getCache().getIfPresent(email);
+        if (cached != null && !cached.equals(UserSnapshot.of(user))) {
+            userDetailsCache.evict(email);
+        }
+        return user;
     }
 }
@@ -0,0 +1,80 @@
+package com.sambath.security.oauth2;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Pending authorization requests of this node only, for single node deployments, sticky sessions and tests.
+// Caffeine bounds the size and reclaims expired entries during normal reads and writes,
+// in small amortized steps instead of a sweep under a global lock.
+@Component
+@ConditionalOnProperty(value = "app.oauth2.authorization-request-store.type", havingValue = "memory")
+public class InMemoryAuthorizationRequestStore implements AuthorizationRequestStore {
+    private final Cache<String, Entry> cache;
+
+    @Autowired
+    public InMemoryAuthorizationRequestStore(
+            @Value("${app.oauth2.authorization-request-store.maximum-size}") long maximumSize
+    ) {
+        this(maximumSize, Ticker.systemTicker());
+    }
+
+    InMemoryAuthorizationRequestStore(long maximumSize, Ticker ticker) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new UntilEntryExpiration())
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    public void save(String state, OAuth2AuthorizationRequest authorizationRequest, Duration timeToLive) {
+        cache.put(state, new Entry(authorizationRequest, timeToLive.toNanos()));
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest get(String state) {
+        Entry entry = cache.getIfPresent(state);
+        return entry != null ? entry.authorizationRequest() : null;
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest remove(String state) {
+        // Map remove is atomic, expired entries are never returned by the map view
+        Entry entry = cache.asMap().remove(state);
+        return entry != null ? entry.authorizationRequest() : null;
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    private record Entry(OAuth2AuthorizationRequest authorizationRequest, long timeToLiveNanos) {
+    }
+
+    private static final class UntilEntryExpiration implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String state, Entry entry, long currentTime) {
+            return entry.timeToLiveNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String state, Entry entry, long currentTime, long currentDuration) {
+            return entry.timeToLiveNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String state, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -2,13 +2,10 @@ package com.sambath.security.oauth2;
 
 import com.sambath.security.auth.dto.JwtToken;
 import com.sambath.security.exception.BadRequestException;
-import com.sambath.security.exception.ResourceNotFoundException;
 import com.sambath.security.auth.util.CookieUtils;
 import com.sambath.security.config.AppProperties;
 import com.sambath.security.jwt.JwtService;
 import com.sambath.security.oauth2.user.UserPrincipal;
-import com.sambath.security.user.entity.User;
-import com.sambath.security.user.repository.UserRepository;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.Cookie;
@@ -27,8 +24,7 @@ import static com.sambath.security.oauth2.HttpCookieOAuth2AuthorizationRequestRe
 @Component
 @RequiredArgsConstructor
 public class OAuth2AuthenticationSuccessHandler extends SimpleUrlAuthenticationSuccessHandler {
-    private final HttpCookieOAuth2AuthorizationRequestRepository httpCookieOAuth2AuthorizationRequestRepository;
-    private final UserRepository userRepository;
+    private final OAuth2AuthorizationRequestRepository authorizationRequestRepository;
     private final JwtService jwtService;
     private final AppProperties appProperties;
 
@@ -58,12 +54,8 @@ public class OAuth2AuthenticationSuccessHandler extends SimpleUrlAuthenticationS
         // Get UserPrincipal from Authentication
         UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
 
-        // Get User from UserPrincipal
-        User user = userRepository.findUserByEmail(userPrincipal.getEmail())
-                .orElseThrow(() -> new ResourceNotFoundException("User", "email", userPrincipal.getEmail()));
-
-        /// Generate JWT token
-        JwtToken jwtToken = jwtService.generateJwtToken(user);
+        // Generate JWT token, the principal already carries the user id and role
+        JwtToken jwtToken = jwtService.generateJwtToken(userPrincipal);
 
         return UriComponentsBuilder.fromUriString(targetUrl)
                 .queryParam("accessToken", jwtToken.getAccessToken())
@@ -73,7 +65,7 @@ public class OAuth2AuthenticationSuccessHandler extends SimpleUrlAuthenticationS
 
     protected void clearAuthenticationAttributes(HttpServletRequest request, HttpServletResponse response) {
         super.clearAuthenticationAttributes(request);
-        httpCookieOAuth2AuthorizationRequestRepository.removeAuthorizationRequestCookies(request, response);
+        authorizationRequestRepository.removeAuthorizationRequestCookies(request, response);
     }
 
     private boolean isAuthorizedRedirectUri(String uri) {
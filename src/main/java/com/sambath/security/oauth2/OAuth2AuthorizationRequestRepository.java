@@ -0,0 +1,13 @@
+package com.sambath.security.oauth2;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.oauth2.client.web.AuthorizationRequestRepository;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+
+// Where the authorization request waits between the redirect to the provider and the callback,
+// selected with app.oauth2.authorization-request-store.type
+public interface OAuth2AuthorizationRequestRepository extends AuthorizationRequestRepository<OAuth2AuthorizationRequest> {
+    // Clear the cookies set for the login once it has finished, successfully or not
+    void removeAuthorizationRequestCookies(HttpServletRequest request, HttpServletResponse response);
+}
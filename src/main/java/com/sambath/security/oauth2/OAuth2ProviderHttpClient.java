@@ -0,0 +1,158 @@
+package com.sambath.security.oauth2;
+
+import com.sambath.security.config.AppProperties;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.FormHttpMessageConverter;
+import org.springframework.security.oauth2.client.endpoint.DefaultAuthorizationCodeTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AuthorizationCodeGrantRequest;
+import org.springframework.security.oauth2.client.http.OAuth2ErrorResponseErrorHandler;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.http.converter.OAuth2AccessTokenResponseHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Pooled, keep-alive HTTP client for the token and user info calls to the OAuth2 providers.
+// Every provider host is a route of the pool with the connect and read timeouts of its provider.
+// Its connection limit caps concurrent calls to it, and a call that waits longer than the
+// connection request timeout for a connection fails, so a slow provider cannot hold every request thread.
+@Component
+public class OAuth2ProviderHttpClient {
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final HttpComponentsClientHttpRequestFactory requestFactory;
+
+    @Autowired
+    public OAuth2ProviderHttpClient(AppProperties appProperties, ClientRegistrationRepository clientRegistrationRepository) {
+        this(appProperties.getOauth2().getHttpClient(), registrations(clientRegistrationRepository));
+    }
+
+    OAuth2ProviderHttpClient(AppProperties.HttpClient config, Iterable<ClientRegistration> registrations) {
+        ConnectionConfig defaultConnectionConfig = connectionConfig(config.getConnectTimeoutInMs(), config.getReadTimeoutInMs());
+        Map<HttpRoute, ConnectionConfig> connectionConfigs = new HashMap<>();
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(config.getMaxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnections());
+        connectionManager.setDefaultConnectionConfig(defaultConnectionConfig);
+
+        for (ClientRegistration registration : registrations) {
+            AppProperties.ProviderHttpClient provider = config.getProviders().get(registration.getRegistrationId());
+            if (provider == null) {
+                continue;
+            }
+            ConnectionConfig connectionConfig = connectionConfig(
+                    provider.getConnectTimeoutInMs() != null ? provider.getConnectTimeoutInMs() : config.getConnectTimeoutInMs(),
+                    provider.getReadTimeoutInMs() != null ? provider.getReadTimeoutInMs() : config.getReadTimeoutInMs()
+            );
+            int maxConnections = provider.getMaxConnections() != null ? provider.getMaxConnections() : config.getMaxConnections();
+            for (HttpRoute route : routes(registration)) {
+                connectionConfigs.put(route, connectionConfig);
+                connectionManager.setMaxPerRoute(route, maxConnections);
+            }
+        }
+        connectionManager.setConnectionConfigResolver(route -> connectionConfigs.getOrDefault(route, defaultConnectionConfig));
+
+        TimeValue keepAlive = TimeValue.ofSeconds(config.getKeepAliveInSec());
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(config.getConnectionRequestTimeoutInMs()))
+                        .build())
+                // Providers rarely send Keep-Alive, keep connections for the configured time instead of indefinitely
+                .setKeepAliveStrategy((response, context) -> keepAlive)
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive)
+                .build();
+        requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    // RestTemplate for DefaultOAuth2UserService, set up like its own default
+    public RestTemplate userInfoRestTemplate() {
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.setErrorHandler(new OAuth2ErrorResponseErrorHandler());
+        return restTemplate;
+    }
+
+    // Authorization code token client, set up like the default DefaultAuthorizationCodeTokenResponseClient
+    public OAuth2AccessTokenResponseClient<OAuth2AuthorizationCodeGrantRequest> accessTokenResponseClient() {
+        RestTemplate restTemplate = new RestTemplate(List.of(
+                new FormHttpMessageConverter(),
+                new OAuth2AccessTokenResponseHttpMessageConverter()
+        ));
+        restTemplate.setRequestFactory(requestFactory);
+        restTemplate.setErrorHandler(new OAuth2ErrorResponseErrorHandler());
+        DefaultAuthorizationCodeTokenResponseClient client = new DefaultAuthorizationCodeTokenResponseClient();
+        client.setRestOperations(restTemplate);
+        return client;
+    }
+
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ConnectionConfig connectionConfig(long connectTimeoutInMs, long readTimeoutInMs) {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutInMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutInMs))
+                // Check pooled connections the provider may have closed meanwhile before reusing them
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build();
+    }
+
+    // Routes of the provider endpoints this application calls, as the client's route planner builds them
+    private static List<HttpRoute> routes(ClientRegistration registration) {
+        List<HttpRoute> routes = new ArrayList<>();
+        ClientRegistration.ProviderDetails providerDetails = registration.getProviderDetails();
+        for (String uri : new String[]{providerDetails.getTokenUri(), providerDetails.getUserInfoEndpoint().getUri()}) {
+            if (uri == null || uri.isBlank()) {
+                continue;
+            }
+            URI target = URI.create(uri);
+            boolean secure = "https".equalsIgnoreCase(target.getScheme());
+            int port = target.getPort() != -1 ? target.getPort() : secure ? 443 : 80;
+            HttpRoute route = new HttpRoute(new HttpHost(target.getScheme(), target.getHost(), port), null, secure);
+            if (!routes.contains(route)) {
+                routes.add(route);
+            }
+        }
+        return routes;
+    }
+
+    private static Iterable<ClientRegistration> registrations(ClientRegistrationRepository clientRegistrationRepository) {
+        if (clientRegistrationRepository instanceof Iterable<?> iterable) {
+            List<ClientRegistration> registrations = new ArrayList<>();
+            iterable.forEach(registration -> registrations.add((ClientRegistration) registration));
+            return registrations;
+        }
+        return List.of();
+    }
+}
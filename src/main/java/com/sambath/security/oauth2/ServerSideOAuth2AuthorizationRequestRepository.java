@@ -0,0 +1,86 @@
+package com.sambath.security.oauth2;
+
+import com.nimbusds.oauth2.sdk.util.StringUtils;
+import com.sambath.security.auth.util.CookieUtils;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+
+import static com.sambath.security.oauth2.HttpCookieOAuth2AuthorizationRequestRepository.OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME;
+import static com.sambath.security.oauth2.HttpCookieOAuth2AuthorizationRequestRepository.REDIRECT_URI_PARAM_COOKIE_NAME;
+
+// Keeps the authorization request in an AuthorizationRequestStore keyed by its state.
+// The browser only carries the state in a cookie, which binds the callback to the browser that started
+// the login: a callback whose state parameter does not match the cookie finds no request.
+@Component
+@ConditionalOnExpression("'${app.oauth2.authorization-request-store.type:cookie}' != 'cookie'")
+@RequiredArgsConstructor
+public class ServerSideOAuth2AuthorizationRequestRepository implements OAuth2AuthorizationRequestRepository {
+    private static final int cookieExpireSeconds = 180;
+
+    private final AuthorizationRequestStore authorizationRequestStore;
+
+    @Override
+    public OAuth2AuthorizationRequest loadAuthorizationRequest(HttpServletRequest request) {
+        String state = boundState(request);
+        return state != null ? authorizationRequestStore.get(state) : null;
+    }
+
+    @Override
+    public void saveAuthorizationRequest(OAuth2AuthorizationRequest authorizationRequest, HttpServletRequest request, HttpServletResponse response) {
+        if (authorizationRequest == null) {
+            String state = boundState(request);
+            if (state != null) {
+                authorizationRequestStore.remove(state);
+            }
+            removeAuthorizationRequestCookies(request, response);
+            return;
+        }
+
+        String state = authorizationRequest.getState();
+        authorizationRequestStore.save(state, authorizationRequest, Duration.ofSeconds(cookieExpireSeconds));
+        CookieUtils.addCookie(response, OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME, state, cookieExpireSeconds);
+        String redirectUriAfterLogin = request.getParameter(REDIRECT_URI_PARAM_COOKIE_NAME);
+        if (StringUtils.isNotBlank(redirectUriAfterLogin)) {
+            CookieUtils.addCookie(response, REDIRECT_URI_PARAM_COOKIE_NAME, redirectUriAfterLogin, cookieExpireSeconds);
+        }
+    }
+
+    // Each authorization request can be used for one callback only
+    @Override
+    public OAuth2AuthorizationRequest removeAuthorizationRequest(HttpServletRequest request, HttpServletResponse response) {
+        String state = boundState(request);
+        return state != null ? authorizationRequestStore.remove(state) : null;
+    }
+
+    @Override
+    public void removeAuthorizationRequestCookies(HttpServletRequest request, HttpServletResponse response) {
+        CookieUtils.deleteCookie(request, response, OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME);
+        CookieUtils.deleteCookie(request, response, REDIRECT_URI_PARAM_COOKIE_NAME);
+    }
+
+    // State of the callback if it matches the state cookie of this browser, otherwise null
+    private static String boundState(HttpServletRequest request) {
+        String state = request.getParameter(OAuth2ParameterNames.STATE);
+        if (state == null) {
+            return null;
+        }
+        String cookieState = CookieUtils.getCookie(request, OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME)
+                .map(Cookie::getValue)
+                .orElse(null);
+        if (cookieState == null || !MessageDigest.isEqual(
+                state.getBytes(StandardCharsets.UTF_8), cookieState.getBytes(StandardCharsets.UTF_8))) {
+            return null;
+        }
+        return state;
+    }
+}
@@ -16,24 +16,32 @@ public class UserPrincipal implements OAuth2User, UserDetails {
     private final String email;
     private final String password;
     private final Collection<? extends GrantedAuthority> authorities;
+    private final boolean enabled;
     private Map<String, Object> attributes;
 
     public UserPrincipal(String id, String email, String password, Collection<? extends GrantedAuthority> authorities) {
+        this(id, email, password, authorities, true);
+    }
+
+    public UserPrincipal(String id, String email, String password, Collection<? extends GrantedAuthority> authorities, boolean enabled) {
         this.id = id;
         this.email = email;
         this.password = password;
         this.authorities = authorities;
+        this.enabled = enabled;
     }
 
+    // Carries id, email, role and enabled flag, everything needed to issue tokens without reloading the user
     public static UserPrincipal create(User user) {
         List<GrantedAuthority> authorities = Collections.
-                singletonList(new SimpleGrantedAuthority("USER"));
+                singletonList(new SimpleGrantedAuthority(user.getRole().name()));
 
         return new UserPrincipal(
                 user.getId(),
                 user.getEmail(),
                 user.getPassword(),
-                authorities
+                authorities,
+                user.isEnabled()
         );
     }
 
@@ -51,6 +59,11 @@ public class UserPrincipal implements OAuth2User, UserDetails {
         return email;
     }
 
+    // Role name, held as the single granted authority
+    public String getRole() {
+        return authorities.isEmpty() ? null : authorities.iterator().next().getAuthority();
+    }
+
     @Override
     public String getPassword() {
         return password;
@@ -78,7 +91,7 @@ public class UserPrincipal implements OAuth2User, UserDetails {
 
     @Override
     public boolean isEnabled() {
-        return true;
+        return enabled;
     }
 
     @Override
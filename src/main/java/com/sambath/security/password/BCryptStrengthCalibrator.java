@@ -0,0 +1,39 @@
+package com.sambath.security.password;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+// Picks the highest BCrypt strength whose hash time on this machine stays within a target.
+// Each strength step doubles the work, so one measurement at the minimum strength is enough.
+public final class BCryptStrengthCalibrator {
+    private static final String PASSWORD = "calibration-Password1";
+    private static final int SAMPLES = 3;
+
+    private BCryptStrengthCalibrator() {
+    }
+
+    public static int calibrate(Duration targetHashTime, int minimumStrength, int maximumStrength) {
+        // BCrypt accepts strengths 4 to 31
+        if (minimumStrength < 4 || maximumStrength > 31 || minimumStrength > maximumStrength) {
+            throw new IllegalArgumentException("BCrypt strength bounds must satisfy 4 <= "
+                    + minimumStrength + " <= " + maximumStrength + " <= 31");
+        }
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minimumStrength);
+        probe.encode(PASSWORD); // Warm up
+        // Fastest sample, slower ones only measure noise from other startup work
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            probe.encode(PASSWORD);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        int strength = minimumStrength;
+        long estimate = fastest;
+        while (strength < maximumStrength && estimate * 2 <= targetHashTime.toNanos()) {
+            strength++;
+            estimate *= 2;
+        }
+        return strength;
+    }
+}
@@ -0,0 +1,153 @@
+package com.sambath.security.password;
+
+import com.sambath.security.exception.ServiceUnavailableException;
+import com.sambath.security.jfr.PasswordHashEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs password hashing and matching on a dedicated, fixed-size pool with a bounded queue,
+// so a burst of logins cannot occupy every request thread with BCrypt. When the queue is full,
+// or a hash waits longer than the configured limit, the request fails fast with a 503.
+public class BoundedPasswordEncoder implements PasswordEncoder {
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long maxWaitInMs;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedCounter;
+
+    public BoundedPasswordEncoder(
+            PasswordEncoder delegate,
+            int poolSize,
+            int queueCapacity,
+            long maxWaitInMs,
+            MeterRegistry meterRegistry
+    ) {
+        this.delegate = delegate;
+        this.maxWaitInMs = maxWaitInMs;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-encoder-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.executor.prestartAllCoreThreads();
+        Gauge.builder("auth.password.queue.size", executor, pool -> pool.getQueue().size())
+                .description("Password hashes waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashes running")
+                .register(meterRegistry);
+        this.encodeTimer = Timer.builder("auth.password.hash")
+                .description("Password hashing time, excluding time in the queue")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder("auth.password.hash")
+                .description("Password hashing time, excluding time in the queue")
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.password.rejected")
+                .description("Password hashes rejected because the pool was saturated")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long submittedAt = System.nanoTime();
+        return submit("encode", () -> {
+            PasswordHashEvent event = begin("encode", submittedAt);
+            String encoded = encodeTimer.record(() -> delegate.encode(rawPassword));
+            event.outcome = "encoded";
+            event.commit();
+            return encoded;
+        });
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long submittedAt = System.nanoTime();
+        return submit("matches", () -> {
+            PasswordHashEvent event = begin("matches", submittedAt);
+            boolean matches = matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword));
+            event.outcome = matches ? "match" : "mismatch";
+            event.commit();
+            return matches;
+        });
+    }
+
+    // Cheap string check, no need to go through the pool
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Flight recorder event for a hash that starts now on a pool thread
+    private static PasswordHashEvent begin(String operation, long submittedAt) {
+        PasswordHashEvent event = new PasswordHashEvent();
+        event.begin();
+        event.operation = operation;
+        event.queueTime = System.nanoTime() - submittedAt;
+        return event;
+    }
+
+    // Flight recorder event for a hash that never ran
+    private static void shed(String operation, String outcome) {
+        PasswordHashEvent event = new PasswordHashEvent();
+        event.operation = operation;
+        event.outcome = outcome;
+        event.commit();
+    }
+
+    private <T> T submit(String operation, Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            shed(operation, "rejected");
+            throw new ServiceUnavailableException("Too many sign-in attempts, please retry shortly");
+        }
+        try {
+            return future.get(maxWaitInMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            shed(operation, "timeout");
+            throw new ServiceUnavailableException("Too many sign-in attempts, please retry shortly");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Password check was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
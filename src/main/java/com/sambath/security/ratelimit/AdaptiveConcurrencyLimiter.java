@@ -0,0 +1,146 @@
+package com.sambath.security.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// Concurrency limit that follows observed latency, in the style of the gradient limiter:
+// while recent latency stays close to the long-term baseline the limit grows by about sqrt(limit),
+// when it climbs the limit shrinks in proportion, and failures cut it multiplicatively (AIMD).
+// Requests over the limit are rejected right away instead of waiting for a thread.
+public class AdaptiveConcurrencyLimiter {
+    private static final double DROP_FACTOR = 0.9;
+    private static final int LONG_WINDOW = 600;
+    private static final int SHORT_WINDOW = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    // How much slower than the baseline recent requests may be before the limit shrinks
+    private final double tolerance;
+    // Share of each new estimate applied to the limit
+    private final double smoothing;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // Guarded by this
+    private double estimatedLimit;
+    private final MovingAverage longRtt = new MovingAverage(LONG_WINDOW);
+    private final MovingAverage shortRtt = new MovingAverage(SHORT_WINDOW);
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing) {
+        this(initialLimit, minLimit, maxLimit, tolerance, smoothing, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            double tolerance,
+            double smoothing,
+            LongSupplier nanoClock
+    ) {
+        this.nanoClock = nanoClock;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    // Take a slot, or return null when the limit is reached
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(nanoClock.getAsLong(), current + 1);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (dropped) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * DROP_FACTOR);
+            limit = (int) estimatedLimit;
+            return;
+        }
+        double shortTerm = shortRtt.add(rttNanos);
+        double longTerm = longRtt.add(rttNanos);
+        // Latency has recovered well below the baseline, let the baseline follow it down faster
+        if (longTerm / shortTerm > 2) {
+            longRtt.set(longTerm * 0.95);
+        }
+        // Only grow when the current limit is actually being used
+        if (inFlightAtStart < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longTerm / shortTerm));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - smoothing) + newLimit * smoothing));
+        limit = (int) estimatedLimit;
+    }
+
+    public final class Permit {
+        private final long startNanos;
+        private final int inFlightAtStart;
+
+        private Permit(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        // Request completed, its latency feeds the limit
+        public void success() {
+            inFlight.decrementAndGet();
+            onSample(nanoClock.getAsLong() - startNanos, inFlightAtStart, false);
+        }
+
+        // Request failed because of overload, the limit is cut
+        public void dropped() {
+            inFlight.decrementAndGet();
+            onSample(0, inFlightAtStart, true);
+        }
+
+        // Request completed without saying anything about load, such as a 429 or a bad request
+        public void ignore() {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    // Exponential moving average that is a plain average until the window has filled
+    private static final class MovingAverage {
+        private final int window;
+        private int count;
+        private double value;
+
+        MovingAverage(int window) {
+            this.window = window;
+        }
+
+        double add(double sample) {
+            if (count < window) {
+                count++;
+                value += (sample - value) / count;
+            } else {
+                value += (sample - value) * 2 / (window + 1);
+            }
+            return value;
+        }
+
+        void set(double value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.sambath.security.ratelimit;
+
+import com.sambath.security.exception.ServiceUnavailableException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+// Holds a concurrency slot of the matched endpoint for the duration of the controller call.
+// Without a free slot the request is answered with 503 before it reaches the service layer.
+@Component
+@RequiredArgsConstructor
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+    private static final String PERMIT_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".permit";
+
+    private final ConcurrencyLimiters concurrencyLimiters;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!concurrencyLimiters.isEnabled()) {
+            return true;
+        }
+        // Use the mapping pattern so the number of limiters and metric tags stays bounded
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String endpoint = pattern != null ? pattern.toString() : request.getRequestURI();
+        var permit = concurrencyLimiters.tryAcquire(endpoint);
+        if (permit == null) {
+            throw new ServiceUnavailableException("Server is busy, please try again later");
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(PERMIT_ATTRIBUTE) instanceof AdaptiveConcurrencyLimiter.Permit permit)) {
+            return;
+        }
+        request.removeAttribute(PERMIT_ATTRIBUTE);
+        int status = response.getStatus();
+        if (status == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+            // Downstream pools such as the password encoder are saturated
+            permit.dropped();
+        } else if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            // Rejected by the rate limiter without doing any work
+            permit.ignore();
+        } else {
+            permit.success();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sambath.security.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One adaptive concurrency limiter per endpoint, created on first use,
+// with its current limit, in-flight count and rejections published as metrics tagged by endpoint.
+@Component
+public class ConcurrencyLimiters {
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimiters(
+            MeterRegistry meterRegistry,
+            @Value("${app.concurrency-limit.enabled}") boolean enabled,
+            @Value("${app.concurrency-limit.initial-limit}") int initialLimit,
+            @Value("${app.concurrency-limit.min-limit}") int minLimit,
+            @Value("${app.concurrency-limit.max-limit}") int maxLimit,
+            @Value("${app.concurrency-limit.tolerance}") double tolerance,
+            @Value("${app.concurrency-limit.smoothing}") double smoothing
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Take a slot for the endpoint, or return null and count the rejection when it is at its limit
+    public AdaptiveConcurrencyLimiter.Permit tryAcquire(String endpoint) {
+        Endpoint limiter = endpoints.computeIfAbsent(endpoint, this::createEndpoint);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.limiter.tryAcquire();
+        if (permit == null) {
+            limiter.rejected.increment();
+        }
+        return permit;
+    }
+
+    private Endpoint createEndpoint(String endpoint) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                initialLimit, minLimit, maxLimit, tolerance, smoothing);
+        Gauge.builder("auth.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("auth.concurrency.in.flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Requests holding a concurrency slot")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Counter rejected = Counter.builder("auth.concurrency.rejected")
+                .description("Requests shed because the concurrency limit was reached")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        return new Endpoint(limiter, rejected);
+    }
+
+    private record Endpoint(AdaptiveConcurrencyLimiter limiter, Counter rejected) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.sambath.security.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.exception.TooManyRequestsException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// In-process rate limiter for the auth endpoints, keyed by client IP and by target email.
+// Each endpoint and key type has its own bounded cache of token buckets. A bucket is dropped after
+// it has been idle long enough to be full again, so eviction never hands out extra tokens and
+// memory stays bounded when requests come from many different IPs.
+@Component
+public class RateLimiter {
+    private final boolean enabled;
+    private final Map<String, Buckets> ipBuckets = new HashMap<>();
+    private final Map<String, Buckets> emailBuckets = new HashMap<>();
+
+    public RateLimiter(AppProperties appProperties) {
+        AppProperties.RateLimit rateLimit = appProperties.getRateLimit();
+        this.enabled = rateLimit.isEnabled();
+        rateLimit.getEndpoints().forEach((endpoint, limits) -> {
+            if (limits.getIp() != null) {
+                ipBuckets.put(endpoint, new Buckets(limits.getIp(), rateLimit.getMaximumKeys()));
+            }
+            if (limits.getEmail() != null) {
+                emailBuckets.put(endpoint, new Buckets(limits.getEmail(), rateLimit.getMaximumKeys()));
+            }
+        });
+    }
+
+    // Take a token for the client IP and, when given, the target email, or throw 429
+    public void check(String endpoint, String ip, String email) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        acquire(ipBuckets.get(endpoint), ip, now);
+        if (email != null) {
+            acquire(emailBuckets.get(endpoint), email.toLowerCase(Locale.ROOT), now);
+        }
+    }
+
+    // Take a token for the client IP only
+    public void check(String endpoint, String ip) {
+        check(endpoint, ip, null);
+    }
+
+    private void acquire(Buckets buckets, String key, long now) {
+        if (buckets == null || key == null) {
+            return;
+        }
+        long waitNanos = buckets.get(key, now).tryAcquire(now);
+        if (waitNanos > 0) {
+            throw new TooManyRequestsException(
+                    "Too many requests, please try again later",
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1))
+            );
+        }
+    }
+
+    private static final class Buckets {
+        private final long emissionInterval;
+        private final long burstInterval;
+        private final Cache<String, TokenBucket> cache;
+
+        Buckets(AppProperties.Limit limit, long maximumKeys) {
+            if (limit.getCapacity() < 1 || limit.getRefillPerMinute() < 1) {
+                throw new IllegalArgumentException("Rate limit capacity and refill-per-minute must be positive");
+            }
+            this.emissionInterval = TimeUnit.MINUTES.toNanos(1) / limit.getRefillPerMinute();
+            this.burstInterval = emissionInterval * limit.getCapacity();
+            this.cache = Caffeine.newBuilder()
+                    .maximumSize(maximumKeys)
+                    .expireAfterAccess(Duration.ofNanos(burstInterval))
+                    .build();
+        }
+
+        TokenBucket get(String key, long now) {
+            return cache.get(key, k -> new TokenBucket(emissionInterval, burstInterval, now));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.sambath.security.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token bucket kept as a single theoretical arrival time (GCRA), so taking a token is one CAS
+// on an AtomicLong instead of a lock around a token count and a refill timestamp.
+public class TokenBucket {
+    // Nanoseconds it takes to refill one token
+    private final long emissionInterval;
+    // Nanoseconds it takes to refill the whole bucket
+    private final long burstInterval;
+    // Time at which the bucket is full again, anything in the past means full
+    private final AtomicLong fullAt;
+
+    public TokenBucket(long emissionInterval, long burstInterval, long nowNanos) {
+        this.emissionInterval = emissionInterval;
+        this.burstInterval = burstInterval;
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    // Take one token, return 0 when allowed or the nanoseconds until a token is available
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current - nowNanos, 0) + emissionInterval;
+            if (next > burstInterval) {
+                return next - burstInterval;
+            }
+            if (fullAt.compareAndSet(current, nowNanos + next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -6,20 +6,49 @@ import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
 
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@Table(indexes = {
+        @Index(name = "refresh_token_user_id_idx", columnList = "user_id"),
+        @Index(name = "refresh_token_expires_at_idx", columnList = "expiresAt")
+})
 public class RefreshToken {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private String id;
 
-    @ManyToOne(cascade = CascadeType.ALL)
+    // Plain user id, saving or deleting a refresh token never touches the user
+    @Column(name = "user_id", nullable = false)
     @NotNull
     @NotBlank
+    private String userId;
+
+    // Read-only mapping of the same column, only there to keep the foreign key to users
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(
+            name = "user_id",
+            insertable = false,
+            updatable = false,
+            foreignKey = @ForeignKey(name = "refresh_token_user_id_fk")
+    )
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private User user;
+
+    @Column(nullable = false)
+    @NotNull
+    private LocalDateTime createdAt;
+    // Same expiration as the signed refresh token, expired rows are purged in batches
+    @Column(nullable = false)
+    @NotNull
+    private LocalDateTime expiresAt;
 }
@@ -6,10 +6,40 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDateTime;
+import java.util.Optional;
+
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, String> {
     // Delete all refresh token by user id
     @Transactional
     @Modifying
-    @Query("DELETE FROM RefreshToken r WHERE r.user.id = :userId")
+    @Query("DELETE FROM RefreshToken r WHERE r.userId = :userId")
     void deleteAllByUserId(String userId);
+
+    // Delete refresh token by id and return the number of deleted rows
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.id = :refreshTokenId")
+    int deleteRefreshTokenById(String refreshTokenId);
+
+    // Whether the refresh token exists and has not expired
+    @Query("SELECT CASE WHEN COUNT(r) > 0 THEN true ELSE false END FROM RefreshToken r WHERE r.id = :refreshTokenId " +
+            "AND r.expiresAt > :now")
+    boolean existsUnexpired(String refreshTokenId, LocalDateTime now);
+
+    // Delete refresh token and insert its replacement in one statement, returning the owner's user id.
+    // Concurrent rotations of the same token block on the row and only the first one gets a result.
+    // An expired token is deleted without a replacement.
+    @Transactional
+    @Query(value = "WITH deleted AS (DELETE FROM refresh_token WHERE id = :refreshTokenId RETURNING user_id, expires_at) " +
+            "INSERT INTO refresh_token (id, user_id, created_at, expires_at) " +
+            "SELECT :newRefreshTokenId, user_id, :createdAt, :expiresAt FROM deleted " +
+            "WHERE expires_at > :createdAt " +
+            "RETURNING user_id", nativeQuery = true)
+    Optional<String> rotate(
+            String refreshTokenId,
+            String newRefreshTokenId,
+            LocalDateTime createdAt,
+            LocalDateTime expiresAt
+    );
 }
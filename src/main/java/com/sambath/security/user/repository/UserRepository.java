@@ -17,7 +17,38 @@ public interface UserRepository extends JpaRepository<User, String> {
     @Query("UPDATE User u " + "SET u.enabled = TRUE WHERE u.email = ?1")
     void enableUser(String email);
 
+    // Update password hash by email
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = ?2 WHERE u.email = ?1")
+    void updatePassword(String email, String password);
+
     Optional<User> findByEmail(String email);
 
+    // Insert the social login user, or refresh name and image url of the existing one, in one statement.
+    // The row is only rewritten when a value differs and the provider matches, otherwise it is returned as stored
+    // so the caller can report a provider mismatch. Empty only if a concurrent login inserted the row meanwhile.
+    @Transactional
+    @Query(value = "WITH upserted AS (" +
+            "INSERT INTO users (id, name, first_name, last_name, email, image_url, role, provider, provider_id, enabled) " +
+            "VALUES (:id, :name, :firstName, :lastName, :email, :imageUrl, 'USER', :provider, :providerId, TRUE) " +
+            "ON CONFLICT (email) DO UPDATE SET name = EXCLUDED.name, image_url = EXCLUDED.image_url " +
+            "WHERE users.provider = EXCLUDED.provider " +
+            "AND (users.name IS DISTINCT FROM EXCLUDED.name OR users.image_url IS DISTINCT FROM EXCLUDED.image_url) " +
+            "RETURNING *) " +
+            "SELECT * FROM upserted " +
+            "UNION ALL " +
+            "SELECT * FROM users WHERE email = :email AND NOT EXISTS (SELECT 1 FROM upserted)", nativeQuery = true)
+    Optional<User> upsertOAuth2User(
+            String id,
+            String name,
+            String firstName,
+            String lastName,
+            String email,
+            String imageUrl,
+            String provider,
+            String providerId
+    );
+
     Boolean existsByEmail(String email);
 }
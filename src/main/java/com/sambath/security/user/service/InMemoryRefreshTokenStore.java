@@ -0,0 +1,123 @@
+package com.sambath.security.user.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+// Refresh tokens in memory for single node and test deployments, lost on restart.
+// Tokens are keyed by id with a per-user index of token ids. Every change to a user's tokens runs
+// inside compute on that user's index entry, so it is atomic against revokeAllForUser while
+// changes for different users do not contend. Expired tokens are swept periodically.
+@Service
+@ConditionalOnProperty(value = "app.auth.refresh-token-store.type", havingValue = "memory")
+public class InMemoryRefreshTokenStore implements RefreshTokenStore {
+    private final ConcurrentHashMap<String, StoredRefreshToken> refreshTokens = new ConcurrentHashMap<>();
+    // Token id sets are only read or changed inside compute on their user's entry
+    private final ConcurrentHashMap<String, Set<String>> refreshTokenIdsByUser = new ConcurrentHashMap<>();
+
+    @Override
+    public String issue(String userId, LocalDateTime expiresAt) {
+        return locked(userId, refreshTokenIds -> add(refreshTokenIds, userId, expiresAt));
+    }
+
+    @Override
+    public boolean exists(String refreshTokenId) {
+        StoredRefreshToken refreshToken = refreshTokens.get(refreshTokenId);
+        return refreshToken != null && !refreshToken.isExpired(LocalDateTime.now());
+    }
+
+    @Override
+    public Optional<RotatedRefreshToken> rotate(String refreshTokenId, LocalDateTime expiresAt) {
+        StoredRefreshToken refreshToken = refreshTokens.get(refreshTokenId);
+        if (refreshToken == null) {
+            return Optional.empty();
+        }
+        String newRefreshTokenId = locked(refreshToken.userId(), refreshTokenIds -> {
+            // Only the caller whose remove succeeds gets to rotate
+            if (!remove(refreshTokenIds, refreshTokenId, refreshToken) || refreshToken.isExpired(LocalDateTime.now())) {
+                return null;
+            }
+            return add(refreshTokenIds, refreshToken.userId(), expiresAt);
+        });
+        return Optional.ofNullable(newRefreshTokenId)
+                .map(id -> new RotatedRefreshToken(id, refreshToken.userId()));
+    }
+
+    @Override
+    public boolean revoke(String refreshTokenId) {
+        StoredRefreshToken refreshToken = refreshTokens.get(refreshTokenId);
+        if (refreshToken == null) {
+            return false;
+        }
+        return locked(refreshToken.userId(), refreshTokenIds -> remove(refreshTokenIds, refreshTokenId, refreshToken));
+    }
+
+    @Override
+    public void revokeAllForUser(String userId) {
+        locked(userId, refreshTokenIds -> {
+            refreshTokenIds.forEach(refreshTokens::remove);
+            refreshTokenIds.clear();
+            return null;
+        });
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.auth.refresh-token-store.sweep-interval-in-sec}",
+            fixedDelayString = "${app.auth.refresh-token-store.sweep-interval-in-sec}",
+            timeUnit = TimeUnit.SECONDS
+    )
+    public void sweepExpired() {
+        var now = LocalDateTime.now();
+        refreshTokens.forEach((refreshTokenId, refreshToken) -> {
+            if (refreshToken.isExpired(now)) {
+                locked(refreshToken.userId(), refreshTokenIds -> remove(refreshTokenIds, refreshTokenId, refreshToken));
+            }
+        });
+    }
+
+    public int size() {
+        return refreshTokens.size();
+    }
+
+    // Run the change with the user's token ids locked, the user's entry is dropped once it is empty
+    private <T> T locked(String userId, Function<Set<String>, T> change) {
+        var result = new AtomicReference<T>();
+        refreshTokenIdsByUser.compute(userId, (id, refreshTokenIds) -> {
+            Set<String> ids = refreshTokenIds != null ? refreshTokenIds : new HashSet<>();
+            result.set(change.apply(ids));
+            return ids.isEmpty() ? null : ids;
+        });
+        return result.get();
+    }
+
+    private String add(Set<String> refreshTokenIds, String userId, LocalDateTime expiresAt) {
+        var refreshTokenId = UUID.randomUUID().toString();
+        refreshTokens.put(refreshTokenId, new StoredRefreshToken(userId, expiresAt));
+        refreshTokenIds.add(refreshTokenId);
+        return refreshTokenId;
+    }
+
+    private boolean remove(Set<String> refreshTokenIds, String refreshTokenId, StoredRefreshToken refreshToken) {
+        if (!refreshTokens.remove(refreshTokenId, refreshToken)) {
+            return false;
+        }
+        refreshTokenIds.remove(refreshTokenId);
+        return true;
+    }
+
+    private record StoredRefreshToken(String userId, LocalDateTime expiresAt) {
+        boolean isExpired(LocalDateTime now) {
+            return expiresAt.isBefore(now);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.sambath.security.user.service;
+
+import com.sambath.security.user.entity.RefreshToken;
+import com.sambath.security.user.repository.RefreshTokenRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+// Refresh tokens in the refresh_token table, optionally written behind.
+// A token issued write-behind on another node may not be committed yet, so a miss is only final once
+// its deadline has passed, see RefreshTokenWriteBehind.
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "app.auth.refresh-token-store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaRefreshTokenStore implements RefreshTokenStore {
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final RefreshTokenWriteBehind refreshTokenWriteBehind;
+
+    @Override
+    public String issue(String userId, LocalDateTime expiresAt) {
+        RefreshToken refreshToken = RefreshToken.builder()
+                .userId(userId)
+                .createdAt(LocalDateTime.now())
+                .expiresAt(expiresAt)
+                .build();
+        refreshTokenWriteBehind.save(refreshToken);
+        return refreshToken.getId();
+    }
+
+    @Override
+    public boolean exists(String refreshTokenId) {
+        // Make sure a refresh token issued moments ago has been written
+        refreshTokenWriteBehind.flush(refreshTokenId);
+        if (refreshTokenRepository.existsUnexpired(refreshTokenId, LocalDateTime.now())) {
+            return true;
+        }
+        if (refreshTokenWriteBehind.awaitDeadline(refreshTokenId)
+                && refreshTokenRepository.existsUnexpired(refreshTokenId, LocalDateTime.now())) {
+            return true;
+        }
+        refreshTokenWriteBehind.missing(refreshTokenId);
+        return false;
+    }
+
+    @Override
+    public Optional<RotatedRefreshToken> rotate(String refreshTokenId, LocalDateTime expiresAt) {
+        refreshTokenWriteBehind.flush(refreshTokenId);
+        var newRefreshTokenId = UUID.randomUUID().toString();
+        var userId = refreshTokenRepository.rotate(refreshTokenId, newRefreshTokenId, LocalDateTime.now(), expiresAt);
+        if (userId.isEmpty() && refreshTokenWriteBehind.awaitDeadline(refreshTokenId)) {
+            userId = refreshTokenRepository.rotate(refreshTokenId, newRefreshTokenId, LocalDateTime.now(), expiresAt);
+        }
+        if (userId.isEmpty()) {
+            refreshTokenWriteBehind.missing(refreshTokenId);
+        }
+        return userId.map(id -> new RotatedRefreshToken(newRefreshTokenId, id));
+    }
+
+    @Override
+    public boolean revoke(String refreshTokenId) {
+        refreshTokenWriteBehind.flush(refreshTokenId);
+        if (refreshTokenRepository.deleteRefreshTokenById(refreshTokenId) > 0) {
+            return true;
+        }
+        // Otherwise the row could still be inserted after the delete and bring the token back
+        if (refreshTokenWriteBehind.awaitDeadline(refreshTokenId)
+                && refreshTokenRepository.deleteRefreshTokenById(refreshTokenId) > 0) {
+            return true;
+        }
+        refreshTokenWriteBehind.missing(refreshTokenId);
+        return false;
+    }
+
+    @Override
+    public void revokeAllForUser(String userId) {
+        long startedAt = System.currentTimeMillis();
+        // Write every queued refresh token, otherwise the user's newest ones would be inserted after the delete
+        refreshTokenWriteBehind.flush();
+        refreshTokenRepository.deleteAllByUserId(userId);
+        if (refreshTokenWriteBehind.isEnabled()) {
+            // Other nodes may still have tokens of the user queued, delete again once they are all written or abandoned
+            refreshTokenWriteBehind.awaitDeadlinesOfTokensIssuedBefore(startedAt);
+            refreshTokenRepository.deleteAllByUserId(userId);
+        }
+    }
+}
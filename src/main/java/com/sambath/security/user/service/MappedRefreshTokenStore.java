@@ -0,0 +1,403 @@
+package com.sambath.security.user.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Refresh tokens in a memory-mapped file, off the Java heap and kept across restarts.
+// The file is a fixed-size open-addressing hash table with linear probing. Token and user ids
+// are UUIDs stored as two longs each:
+//   header: magic, version, capacity
+//   slot:   state | token id | user id | expires at (epoch millis), 48 bytes
+// Slot contents are written before its state, so a crash never exposes a half written slot.
+// Compaction writes a new table to a temporary file, forces it to disk and renames it over the
+// store, so a crash during compaction leaves either the old or the new table, never a mix.
+// Lookups run under a read lock, changes under a write lock, and revokeAllForUser scans the table.
+@Service
+@ConditionalOnProperty(value = "app.auth.refresh-token-store.type", havingValue = "mapped")
+public class MappedRefreshTokenStore implements RefreshTokenStore, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedRefreshTokenStore.class);
+    private static final long MAGIC = 0x5254_4F4B_5354_4F52L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 48;
+    private static final int STATE = 0;
+    private static final int TOKEN_ID = 8;
+    private static final int USER_ID = 24;
+    private static final int EXPIRES_AT = 40;
+    private static final int EMPTY = 0;
+    private static final int LIVE = 1;
+    private static final int DELETED = 2;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final Path path;
+    private final Path compactionPath;
+    private final long size;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int liveSlots;
+    private int deletedSlots;
+
+    public MappedRefreshTokenStore(
+            @Value("${app.auth.refresh-token-store.mapped.path}") Path path,
+            @Value("${app.auth.refresh-token-store.mapped.capacity}") int requestedCapacity
+    ) {
+        this.capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1) << 1);
+        this.mask = capacity - 1;
+        this.path = path;
+        this.compactionPath = path.resolveSibling(path.getFileName() + ".compact");
+        this.size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Refresh token store capacity is too large: " + capacity);
+        }
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            // Left over from a compaction that did not finish, the store itself is still complete
+            Files.deleteIfExists(compactionPath);
+            boolean created = !Files.exists(path) || Files.size(path) == 0;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!created && channel.size() != size) {
+                throw new IllegalStateException("Refresh token store " + path + " was created with another capacity");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open refresh token store " + path, e);
+        }
+        if (buffer.getLong(0) == 0) {
+            writeHeader(buffer);
+        } else if (buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION || buffer.getInt(12) != capacity) {
+            throw new IllegalStateException("Refresh token store " + path + " has an unknown format");
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            int state = state(slot);
+            if (state == LIVE) {
+                liveSlots++;
+            } else if (state == DELETED) {
+                deletedSlots++;
+            }
+        }
+        LOGGER.info("Opened refresh token store {} with {} of {} slots in use", path, liveSlots, capacity);
+    }
+
+    @Override
+    public String issue(String userId, LocalDateTime expiresAt) {
+        UUID refreshTokenId = UUID.randomUUID();
+        UUID user = UUID.fromString(userId);
+        lock.writeLock().lock();
+        try {
+            insert(refreshTokenId, user, toMillis(expiresAt));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return refreshTokenId.toString();
+    }
+
+    @Override
+    public boolean exists(String refreshTokenId) {
+        UUID id = parse(refreshTokenId);
+        if (id == null) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            int slot = find(id);
+            return slot >= 0 && !isExpired(slot, System.currentTimeMillis());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<RotatedRefreshToken> rotate(String refreshTokenId, LocalDateTime expiresAt) {
+        UUID id = parse(refreshTokenId);
+        if (id == null) {
+            return Optional.empty();
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = find(id);
+            if (slot < 0) {
+                return Optional.empty();
+            }
+            boolean expired = isExpired(slot, System.currentTimeMillis());
+            UUID user = new UUID(buffer.getLong(offset(slot) + USER_ID), buffer.getLong(offset(slot) + USER_ID + 8));
+            delete(slot);
+            if (expired) {
+                return Optional.empty();
+            }
+            UUID newRefreshTokenId = UUID.randomUUID();
+            insert(newRefreshTokenId, user, toMillis(expiresAt));
+            return Optional.of(new RotatedRefreshToken(newRefreshTokenId.toString(), user.toString()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean revoke(String refreshTokenId) {
+        UUID id = parse(refreshTokenId);
+        if (id == null) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = find(id);
+            if (slot < 0) {
+                return false;
+            }
+            delete(slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void revokeAllForUser(String userId) {
+        UUID user = parse(userId);
+        if (user == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                int offset = offset(slot);
+                if (state(slot) == LIVE
+                        && buffer.getLong(offset + USER_ID) == user.getMostSignificantBits()
+                        && buffer.getLong(offset + USER_ID + 8) == user.getLeastSignificantBits()) {
+                    delete(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Drop expired tokens, rebuild the table once deleted slots slow down probing and flush to disk
+    @Scheduled(
+            initialDelayString = "${app.auth.refresh-token-store.sweep-interval-in-sec}",
+            fixedDelayString = "${app.auth.refresh-token-store.sweep-interval-in-sec}",
+            timeUnit = TimeUnit.SECONDS
+    )
+    public void sweepExpired() {
+        lock.writeLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (int slot = 0; slot < capacity; slot++) {
+                if (state(slot) == LIVE && isExpired(slot, now)) {
+                    delete(slot);
+                }
+            }
+            if (deletedSlots > capacity / 4) {
+                compact();
+            }
+            buffer.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveSlots;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close refresh token store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Copy live slots into a new table so probe chains no longer pass deleted slots.
+    // The old file is only replaced once the new one is completely on disk.
+    private void compact() {
+        MappedByteBuffer compacted;
+        FileChannel compactedChannel;
+        int count = 0;
+        try {
+            compactedChannel = FileChannel.open(compactionPath,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                compacted = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                for (int slot = 0; slot < capacity; slot++) {
+                    if (state(slot) == LIVE) {
+                        int target = hash(buffer.getLong(offset(slot) + TOKEN_ID), buffer.getLong(offset(slot) + TOKEN_ID + 8));
+                        while (compacted.getInt(offset(target) + STATE) != EMPTY) {
+                            target = (target + 1) & mask;
+                        }
+                        // The slot is copied with its LIVE state, the file is not visible until the rename
+                        compacted.put(offset(target), buffer, offset(slot), SLOT_SIZE);
+                        count++;
+                    }
+                }
+                writeHeader(compacted);
+                compacted.force();
+                compactedChannel.force(true);
+            } catch (IOException | RuntimeException e) {
+                compactedChannel.close();
+                throw e;
+            }
+            Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory();
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(compactionPath);
+            } catch (IOException ignored) {
+                // Deleted on the next start
+            }
+            // The old table is untouched and still usable, compaction is retried on a later sweep
+            LOGGER.warn("Failed to compact refresh token store {}", path, e);
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close refresh token store before compaction", e);
+        }
+        channel = compactedChannel;
+        buffer = compacted;
+        liveSlots = count;
+        deletedSlots = 0;
+        LOGGER.info("Compacted refresh token store, {} live tokens", count);
+    }
+
+    private void insert(UUID refreshTokenId, UUID userId, long expiresAt) {
+        // Keep one slot free so probing always ends
+        if (liveSlots >= capacity - 1) {
+            throw new IllegalStateException("Refresh token store is full");
+        }
+        // Deleted slots are reused, but once they fill every empty slot misses probe the whole table
+        if (liveSlots + deletedSlots >= capacity - 1) {
+            compact();
+        }
+        int slot = hash(refreshTokenId);
+        while (state(slot) == LIVE) {
+            slot = (slot + 1) & mask;
+        }
+        if (state(slot) == DELETED) {
+            deletedSlots--;
+        }
+        int offset = offset(slot);
+        buffer.putLong(offset + TOKEN_ID, refreshTokenId.getMostSignificantBits());
+        buffer.putLong(offset + TOKEN_ID + 8, refreshTokenId.getLeastSignificantBits());
+        buffer.putLong(offset + USER_ID, userId.getMostSignificantBits());
+        buffer.putLong(offset + USER_ID + 8, userId.getLeastSignificantBits());
+        buffer.putLong(offset + EXPIRES_AT, expiresAt);
+        buffer.putInt(offset + STATE, LIVE);
+        liveSlots++;
+    }
+
+    // Slot of a live token, -1 if absent. Probing stops at the first empty slot.
+    private int find(UUID refreshTokenId) {
+        int slot = hash(refreshTokenId);
+        for (int probes = 0; probes < capacity; probes++) {
+            int state = state(slot);
+            if (state == EMPTY) {
+                return -1;
+            }
+            int offset = offset(slot);
+            if (state == LIVE
+                    && buffer.getLong(offset + TOKEN_ID) == refreshTokenId.getMostSignificantBits()
+                    && buffer.getLong(offset + TOKEN_ID + 8) == refreshTokenId.getLeastSignificantBits()) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void delete(int slot) {
+        buffer.putInt(offset(slot) + STATE, DELETED);
+        liveSlots--;
+        deletedSlots++;
+    }
+
+    private boolean isExpired(int slot, long now) {
+        return buffer.getLong(offset(slot) + EXPIRES_AT) < now;
+    }
+
+    private int state(int slot) {
+        return buffer.getInt(offset(slot) + STATE);
+    }
+
+    private int hash(UUID id) {
+        return hash(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    private int hash(long mostSignificantBits, long leastSignificantBits) {
+        long h = mostSignificantBits ^ leastSignificantBits;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private void writeHeader(MappedByteBuffer target) {
+        target.putInt(8, VERSION);
+        target.putInt(12, capacity);
+        target.putLong(0, MAGIC);
+    }
+
+    // Make the rename itself durable, not every platform can open a directory for this
+    private void forceDirectory() {
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Cannot force directory {}", directory, e);
+        }
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    private static UUID parse(String id) {
+        try {
+            return id != null ? UUID.fromString(id) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.sambath.security.user.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Deletes expired refresh tokens in bounded batches, each in its own short transaction.
+// A Postgres advisory lock keeps nodes from purging at the same time, a node that cannot
+// take it skips the run.
+@Service
+@ConditionalOnProperty(value = "app.auth.refresh-token-purge.enabled", havingValue = "true")
+public class RefreshTokenPurgeService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshTokenPurgeService.class);
+    // Arbitrary application wide advisory lock key
+    private static final long PURGE_LOCK_KEY = 0x7266745F70757267L;
+    private static final String DELETE_EXPIRED_BATCH = "DELETE FROM refresh_token WHERE id IN (" +
+            "SELECT id FROM refresh_token WHERE expires_at < ? LIMIT ? FOR UPDATE SKIP LOCKED)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter purgedCounter;
+    private final Timer batchTimer;
+    @Value("${app.auth.refresh-token-purge.batch-size}")
+    private int BATCH_SIZE;
+    @Value("${app.auth.refresh-token-purge.pause-between-batches-in-ms}")
+    private long PAUSE_BETWEEN_BATCHES_IN_MS;
+
+    public RefreshTokenPurgeService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.purgedCounter = Counter.builder("auth.refresh.token.purged")
+                .description("Expired refresh tokens deleted")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("auth.refresh.token.purge.batch")
+                .description("Latency of one refresh token purge batch")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.auth.refresh-token-purge.interval-in-sec}",
+            fixedDelayString = "${app.auth.refresh-token-purge.interval-in-sec}",
+            timeUnit = TimeUnit.SECONDS
+    )
+    public void purgeExpiredRefreshTokens() {
+        var expiredBefore = Timestamp.valueOf(LocalDateTime.now());
+        long purged = 0;
+        while (true) {
+            Integer deleted = batchTimer.record(() -> transactionTemplate.execute(status -> deleteBatch(expiredBefore)));
+            if (deleted == null) {
+                LOGGER.debug("Refresh token purge is running on another node");
+                break;
+            }
+            purged += deleted;
+            purgedCounter.increment(deleted);
+            if (deleted < BATCH_SIZE) {
+                break;
+            }
+            // Give rotations and logins room between batches
+            try {
+                Thread.sleep(PAUSE_BETWEEN_BATCHES_IN_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (purged > 0) {
+            LOGGER.info("Purged {} expired refresh tokens", purged);
+        }
+    }
+
+    // Delete one batch, or return null when another node holds the purge lock
+    private Integer deleteBatch(Timestamp expiredBefore) {
+        Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, PURGE_LOCK_KEY);
+        if (!Boolean.TRUE.equals(locked)) {
+            return null;
+        }
+        return jdbcTemplate.update(DELETE_EXPIRED_BATCH, expiredBefore, BATCH_SIZE);
+    }
+}
@@ -0,0 +1,26 @@
+package com.sambath.security.user.service;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+// Where issued refresh tokens are kept. Signature and expiration of the JWT are checked before
+// any of these calls, the store only tracks which token ids are still live and who owns them.
+// Every store treats a token past its expiresAt as gone, whether or not it was purged yet.
+public interface RefreshTokenStore {
+    // Store a new refresh token and return its id
+    String issue(String userId, LocalDateTime expiresAt);
+
+    // False for unknown, revoked and expired refresh tokens
+    boolean exists(String refreshTokenId);
+
+    // Atomically replace a refresh token, empty if it no longer exists, has expired or another caller rotated it first
+    Optional<RotatedRefreshToken> rotate(String refreshTokenId, LocalDateTime expiresAt);
+
+    // Delete a refresh token, false if it did not exist
+    boolean revoke(String refreshTokenId);
+
+    void revokeAllForUser(String userId);
+
+    record RotatedRefreshToken(String refreshTokenId, String userId) {
+    }
+}
@@ -0,0 +1,311 @@
+package com.sambath.security.user.service;
+
+import com.sambath.security.user.entity.RefreshToken;
+import com.sambath.security.user.repository.RefreshTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Saves new refresh tokens, optionally write-behind: ids are assigned up front, the token is
+// returned right away and a background thread inserts pending rows in JDBC batches.
+// Anything that reads or deletes a refresh token must call flush first so it sees every token
+// issued by this node.
+// A write-behind id ends with its deadline, visibility-timeout-in-ms after issue: the row is committed
+// by then or never. Rows that cannot be inserted in time are abandoned, so a node that looks up a
+// token issued on another node, or lost in a crash, waits at most until the deadline and then
+// treats a missing row as gone. Node clocks must agree to well within the timeout.
+// A failing batch is retried up to max-attempts flushes, then its rows are inserted one by one and
+// rows the database rejects on their own are dropped, so one bad row cannot hold back the others.
+@Component
+public class RefreshTokenWriteBehind {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshTokenWriteBehind.class);
+    private static final String INSERT_REFRESH_TOKEN =
+            "INSERT INTO refresh_token (id, user_id, created_at, expires_at) VALUES (?, ?, ?, ?)";
+    private static final char DEADLINE_SEPARATOR = '.';
+    // Inserts are cancelled after this long, a row is only sent while it can still commit before its deadline
+    private static final int INSERT_TIMEOUT_IN_SEC = 1;
+    private static final long INSERT_TIMEOUT_IN_MS = TimeUnit.SECONDS.toMillis(INSERT_TIMEOUT_IN_SEC);
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long visibilityTimeoutInMs;
+    // Half of what is left of the deadline after the insert timeout, the other half covers a slow batch
+    private final long maxQueueWaitInMs;
+    // Rows per millisecond the writer commits, smoothed, starting from one batch per insert timeout
+    private volatile double writeRatePerMs;
+    private final BlockingQueue<RefreshToken> queue;
+    // Tokens not yet committed, removed only after their batch commits
+    private final Map<String, RefreshToken> pending = new ConcurrentHashMap<>();
+    // Failed writes by refresh token id, only used under the flush lock
+    private final Map<String, Integer> failedAttempts = new HashMap<>();
+    private final ScheduledExecutorService writer;
+    private final Counter abandonedCounter;
+    private final Counter missingCounter;
+
+    public RefreshTokenWriteBehind(
+            RefreshTokenRepository refreshTokenRepository,
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.auth.refresh-token-write-behind.enabled}") boolean enabled,
+            @Value("${app.auth.refresh-token-write-behind.flush-interval-in-ms}") long flushIntervalInMs,
+            @Value("${app.auth.refresh-token-write-behind.batch-size}") int batchSize,
+            @Value("${app.auth.refresh-token-write-behind.queue-capacity}") int queueCapacity,
+            @Value("${app.auth.refresh-token-write-behind.max-attempts}") int maxAttempts,
+            @Value("${app.auth.refresh-token-write-behind.visibility-timeout-in-ms}") long visibilityTimeoutInMs
+    ) {
+        if (enabled && visibilityTimeoutInMs <= INSERT_TIMEOUT_IN_MS + flushIntervalInMs) {
+            throw new IllegalStateException("app.auth.refresh-token-write-behind.visibility-timeout-in-ms must exceed "
+                    + (INSERT_TIMEOUT_IN_MS + flushIntervalInMs) + " ms, the insert timeout plus the flush interval");
+        }
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.visibilityTimeoutInMs = visibilityTimeoutInMs;
+        this.maxQueueWaitInMs = (visibilityTimeoutInMs - INSERT_TIMEOUT_IN_MS) / 2;
+        this.writeRatePerMs = (double) Math.max(1, batchSize) / INSERT_TIMEOUT_IN_MS;
+        this.abandonedCounter = Counter.builder("auth.refresh.token.write.behind.abandoned")
+                .description("Queued refresh tokens never written: past their deadline, rejected by the database or over capacity")
+                .register(meterRegistry);
+        this.missingCounter = Counter.builder("auth.refresh.token.write.behind.missing")
+                .description("Write-behind refresh tokens not found after their deadline: revoked, rotated, abandoned or lost in a crash")
+                .register(meterRegistry);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        if (enabled) {
+            this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "refresh-token-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.writer.scheduleWithFixedDelay(this::flushQuietly, flushIntervalInMs, flushIntervalInMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.writer = null;
+        }
+    }
+
+    // Save refresh token, its id is set when this returns
+    public void save(RefreshToken refreshToken) {
+        if (!enabled) {
+            refreshTokenRepository.save(refreshToken);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        refreshToken.setId(UUID.randomUUID().toString() + DEADLINE_SEPARATOR + (now + visibilityTimeoutInMs));
+        pending.put(refreshToken.getId(), refreshToken);
+        if (isBehind(now) || !queue.offer(refreshToken)) {
+            // Writer is behind, insert on the caller's thread rather than queueing rows that would miss their deadline
+            try {
+                insert(List.of(refreshToken));
+            } finally {
+                pending.remove(refreshToken.getId());
+            }
+        }
+    }
+
+    // Make sure the refresh token is committed before it is looked up or deleted
+    public void flush(String refreshTokenId) {
+        if (pending.containsKey(refreshTokenId)) {
+            flush();
+        }
+    }
+
+    // Commit every pending refresh token, abandoning those that can no longer commit before their deadline
+    public synchronized void flush() {
+        List<RefreshToken> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            long drainedAt = System.nanoTime();
+            long insertableUntil = System.currentTimeMillis() + INSERT_TIMEOUT_IN_MS;
+            int queued = batch.size();
+            batch.removeIf(refreshToken -> {
+                if (deadline(refreshToken.getId()) > insertableUntil) {
+                    return false;
+                }
+                abandon(refreshToken);
+                return true;
+            });
+            if (batch.size() < queued) {
+                LOGGER.warn("Abandoned {} refresh tokens that cannot be written before their deadline", queued - batch.size());
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                insert(batch);
+                recordWriteRate(batch.size(), System.nanoTime() - drainedAt);
+                batch.forEach(this::forget);
+            } catch (RuntimeException e) {
+                if (!failed(batch)) {
+                    // Keep the rows for the next flush
+                    batch.forEach(this::requeue);
+                    throw e;
+                }
+                insertOneByOne(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    // If the token was issued write-behind, by any node, and its deadline has not passed, wait for the
+    // deadline and return true so the caller looks again. After that its row is committed or never will be.
+    public boolean awaitDeadline(String refreshTokenId) {
+        long remainingMillis = deadline(refreshTokenId) - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+            return false;
+        }
+        sleep(remainingMillis);
+        return true;
+    }
+
+    // Wait until every token any node issued write-behind before issuedBeforeMillis is committed or abandoned
+    public void awaitDeadlinesOfTokensIssuedBefore(long issuedBeforeMillis) {
+        if (!enabled) {
+            return;
+        }
+        long remainingMillis = issuedBeforeMillis + visibilityTimeoutInMs - System.currentTimeMillis();
+        if (remainingMillis > 0) {
+            sleep(remainingMillis);
+        }
+    }
+
+    // A lookup found no row for the token after its deadline
+    public void missing(String refreshTokenId) {
+        if (deadline(refreshTokenId) > 0) {
+            missingCounter.increment();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+            flush();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to write refresh tokens, retrying on next flush", e);
+        }
+    }
+
+    // Count the failed write, true once a row of the batch used up its attempts
+    private boolean failed(List<RefreshToken> batch) {
+        boolean exhausted = false;
+        for (RefreshToken refreshToken : batch) {
+            exhausted |= failedAttempts.merge(refreshToken.getId(), 1, Integer::sum) >= maxAttempts;
+        }
+        return exhausted;
+    }
+
+    // Find the rows that keep the batch from committing. Rows the database rejects are dropped,
+    // any other failure means the database itself is failing, so the remaining rows wait for the next flush.
+    private void insertOneByOne(List<RefreshToken> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            RefreshToken refreshToken = batch.get(i);
+            try {
+                insert(List.of(refreshToken));
+                forget(refreshToken);
+            } catch (DataIntegrityViolationException e) {
+                LOGGER.error("Dropping refresh token {} of user {}, the database rejects it",
+                        refreshToken.getId(), refreshToken.getUserId(), e);
+                abandon(refreshToken);
+            } catch (RuntimeException e) {
+                batch.subList(i, batch.size()).forEach(this::requeue);
+                throw e;
+            }
+        }
+    }
+
+    // The row is committed or dropped, forget it
+    private void forget(RefreshToken refreshToken) {
+        pending.remove(refreshToken.getId());
+        failedAttempts.remove(refreshToken.getId());
+    }
+
+    // The row will never be written
+    private void abandon(RefreshToken refreshToken) {
+        forget(refreshToken);
+        abandonedCounter.increment();
+    }
+
+    private void requeue(RefreshToken refreshToken) {
+        if (!queue.offer(refreshToken)) {
+            LOGGER.error("Dropping refresh token {}, write queue is full", refreshToken.getId());
+            abandon(refreshToken);
+        }
+    }
+
+    // Whether a new row could wait longer than it may, because the oldest one already has or because the
+    // writer cannot get through the queue in time at its current rate
+    private boolean isBehind(long now) {
+        RefreshToken oldest = queue.peek();
+        return oldest != null && (now - (deadline(oldest.getId()) - visibilityTimeoutInMs) > maxQueueWaitInMs
+                || queue.size() > writeRatePerMs * maxQueueWaitInMs);
+    }
+
+    private void recordWriteRate(int rows, long nanos) {
+        double rate = rows / Math.max(1.0, nanos / 1_000_000.0);
+        writeRatePerMs = 0.8 * writeRatePerMs + 0.2 * rate;
+    }
+
+    // Epoch millisecond by which a write-behind token's row is committed or abandoned, 0 for other ids
+    private static long deadline(String refreshTokenId) {
+        int separator = refreshTokenId.lastIndexOf(DEADLINE_SEPARATOR);
+        if (separator < 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(refreshTokenId, separator + 1, refreshTokenId.length(), 10);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for queued refresh tokens", e);
+        }
+    }
+
+    private void insert(List<RefreshToken> refreshTokens) {
+        jdbcTemplate.batchUpdate(INSERT_REFRESH_TOKEN, refreshTokens, refreshTokens.size(), (statement, refreshToken) -> {
+            statement.setQueryTimeout(INSERT_TIMEOUT_IN_SEC);
+            statement.setString(1, refreshToken.getId());
+            statement.setString(2, refreshToken.getUserId());
+            statement.setTimestamp(3, Timestamp.valueOf(refreshToken.getCreatedAt()));
+            statement.setTimestamp(4, Timestamp.valueOf(refreshToken.getExpiresAt()));
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package com.sambath.security.user.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Duration;
+
+// Size and TTL bounded cache in front of a UserDetailsService.
+// Unknown users are never cached, so a newly registered user is visible right away.
+// The delegate must return immutable UserDetails such as UserSnapshot, cached values are shared across threads.
+public class UserDetailsCache implements UserDetailsService {
+    private final UserDetailsService delegate;
+    private final boolean enabled;
+    private final Cache<String, UserDetails> cache;
+
+    public UserDetailsCache(UserDetailsService delegate, boolean enabled, long maximumSize, Duration expiration) {
+        this.delegate = delegate;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expiration)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        if (!enabled) {
+            return delegate.loadUserByUsername(username);
+        }
+        return cache.get(username, delegate::loadUserByUsername);
+    }
+
+    // Drop the cached user, must be called whenever the stored user changes
+    public void evict(String username) {
+        cache.invalidate(username);
+    }
+
+    // Hit, miss and eviction counters used to size the cache
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public Cache<String, UserDetails> getCache() {
+        return cache;
+    }
+}
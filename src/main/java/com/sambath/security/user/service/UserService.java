@@ -2,14 +2,27 @@ package com.sambath.security.user.service;
 
 import com.sambath.security.user.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.stereotype.Service;
 
 @Service
 @RequiredArgsConstructor
-public class UserService {
+public class UserService implements UserDetailsPasswordService {
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
 
     public void enableUser(String email) {
         userRepository.enableUser(email);
+        userDetailsCache.evict(email);
+    }
+
+    // Store a rehashed password, called after a successful login when the stored hash is outdated
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(user.getUsername(), newPassword);
+        userDetailsCache.evict(user.getUsername());
+        // The cached snapshot is immutable, authenticate with a copy that has the new hash
+        return user instanceof UserSnapshot snapshot ? snapshot.withPassword(newPassword) : user;
     }
 }
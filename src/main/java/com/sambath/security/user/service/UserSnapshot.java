@@ -0,0 +1,84 @@
+package com.sambath.security.user.service;
+
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+// Immutable copy of a User, what UserDetailsCache hands out. Cached values are shared by every
+// request thread, so they must never be the mutable, session bound JPA entity.
+public record UserSnapshot(
+        String id,
+        String name,
+        String firstName,
+        String lastName,
+        String email,
+        String password,
+        String imageUrl,
+        Role role,
+        boolean enabled
+) implements UserDetails {
+    public static UserSnapshot of(User user) {
+        return new UserSnapshot(
+                user.getId(),
+                user.getName(),
+                user.getFirstName(),
+                user.getLastName(),
+                user.getEmail(),
+                user.getPassword(),
+                user.getImageUrl(),
+                user.getRole(),
+                user.isEnabled()
+        );
+    }
+
+    // Same user with a rehashed password
+    public UserSnapshot withPassword(String newPassword) {
+        return new UserSnapshot(id, name, firstName, lastName, email, newPassword, imageUrl, role, enabled);
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of(new SimpleGrantedAuthority(role.name()));
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return email; // Use email as username
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Keep the password hash out of logs
+    @Override
+    public String toString() {
+        return "UserSnapshot[id=" + id + ", email=" + email + ", role=" + role + ", enabled=" + enabled + "]";
+    }
+}
@@ -1,13 +1,69 @@
 package com.sambath.security;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
 
-@SpringBootTest
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Signing keys and OAuth2 client ids have no defaults, test values will do
+@SpringBootTest(properties = {
+		"app.auth.jwt.access-token-secret-key=dGVzdC1hY2Nlc3MtdG9rZW4tc2VjcmV0LWtleS0wMTIzNDU2Nzg5",
+		"app.auth.jwt.refresh-token-secret-key=dGVzdC1yZWZyZXNoLXRva2VuLXNlY3JldC1rZXktMDEyMzQ1Njc4OQ==",
+		"spring.security.oauth2.client.registration.google.client-id=test",
+		"spring.security.oauth2.client.registration.facebook.client-id=test",
+		"spring.security.oauth2.client.registration.github.client-id=test",
+		// No mail server in tests, it would turn the health check down
+		"management.health.mail.enabled=false"
+})
+@AutoConfigureMockMvc
+// Tests turn metrics export off by default, the Prometheus endpoint needs it
+@AutoConfigureObservability(tracing = false)
+@Testcontainers(disabledWithoutDocker = true)
 class SecurityApplicationTests {
 
+	// The full context, including the JPA schema, is built against a real database
+	@Container
+	@ServiceConnection
+	static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+	@Autowired
+	private MockMvc mockMvc;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void healthIsPublic() throws Exception {
+		mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+	}
+
+	@Test
+	void metricsNeedAnAdmin() throws Exception {
+		// Anonymous requests are sent to the OAuth2 login like every other protected path
+		mockMvc.perform(get("/actuator/prometheus")).andExpect(status().is3xxRedirection());
+	}
+
+	@Test
+	@WithMockUser(authorities = "USER")
+	void metricsAreForbiddenToUsers() throws Exception {
+		mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isForbidden());
+	}
+
+	@Test
+	@WithMockUser(authorities = "ADMIN")
+	void metricsAreScrapedByAdmins() throws Exception {
+		mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk());
+	}
+
 }
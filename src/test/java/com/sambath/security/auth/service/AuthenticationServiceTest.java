@@ -0,0 +1,123 @@
+package com.sambath.security.auth.service;
+
+import com.sambath.security.auth.dto.AuthenticationRequest;
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.confirmationToken.ConfirmationTokenService;
+import com.sambath.security.email.EmailSenderService;
+import com.sambath.security.exception.BadRequestException;
+import com.sambath.security.exception.ServiceUnavailableException;
+import com.sambath.security.jwt.JwtService;
+import com.sambath.security.jwt.JwtUtil;
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.password.BoundedPasswordEncoder;
+import com.sambath.security.user.repository.UserRepository;
+import com.sambath.security.user.service.RefreshTokenStore;
+import com.sambath.security.user.service.UserDetailsCache;
+import com.sambath.security.user.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthenticationServiceTest {
+    private static final AuthenticationRequest UNKNOWN_USER = AuthenticationRequest.builder()
+            .email("unknown@example.com")
+            .password("password")
+            .build();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    // Every hash blocks past the wait limit, so the pool rejects it like it would under saturation
+    private final BoundedPasswordEncoder saturatedPasswordEncoder = new BoundedPasswordEncoder(new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            await();
+            return "{hash}" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            await();
+            return encodedPassword.equals("{hash}" + rawPassword);
+        }
+    }, 1, 1, 50, new SimpleMeterRegistry());
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        saturatedPasswordEncoder.shutdown();
+    }
+
+    @Test
+    void unknownUserLoginIsServiceUnavailableWhenTheTimingAttackHashIsRejected() {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(username -> {
+            throw new UsernameNotFoundException("User not found");
+        });
+        provider.setPasswordEncoder(saturatedPasswordEncoder);
+
+        assertThatThrownBy(() -> authenticationService(new ProviderManager(provider)).authenticate(UNKNOWN_USER))
+                .isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    void serviceUnavailableWrappedByTheProviderIsUnwrapped() {
+        AuthenticationManager authenticationManager = mock(AuthenticationManager.class);
+        when(authenticationManager.authenticate(any())).thenThrow(new InternalAuthenticationServiceException(
+                "Too many sign-in attempts, please retry shortly",
+                new ServiceUnavailableException("Too many sign-in attempts, please retry shortly")
+        ));
+
+        assertThatThrownBy(() -> authenticationService(authenticationManager).authenticate(UNKNOWN_USER))
+                .isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    void otherInternalFailuresStayBadRequests() {
+        AuthenticationManager authenticationManager = mock(AuthenticationManager.class);
+        when(authenticationManager.authenticate(any())).thenThrow(new InternalAuthenticationServiceException(
+                "Connection refused",
+                new IllegalStateException("Connection refused")
+        ));
+
+        assertThatThrownBy(() -> authenticationService(authenticationManager).authenticate(UNKNOWN_USER))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    private AuthenticationService authenticationService(AuthenticationManager authenticationManager) {
+        return new AuthenticationService(
+                mock(UserRepository.class),
+                mock(UserService.class),
+                mock(RefreshTokenStore.class),
+                mock(EmailSenderService.class),
+                mock(JwtService.class),
+                saturatedPasswordEncoder,
+                mock(JwtUtil.class),
+                authenticationManager,
+                mock(ConfirmationTokenService.class),
+                mock(UserDetailsCache.class),
+                mock(RefreshTokenSingleFlight.class),
+                new AuthMetrics(new SimpleMeterRegistry()),
+                new AppProperties()
+        );
+    }
+
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.sambath.security.auth.service;
+
+import com.sambath.security.exception.ServiceUnavailableException;
+import com.sambath.security.user.dto.RefreshTokenResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RefreshTokenSingleFlightTest {
+    private final RefreshTokenSingleFlight singleFlight = new RefreshTokenSingleFlight(60, 200);
+    private final AtomicInteger rotations = new AtomicInteger();
+
+    @Test
+    void rotatedTokenReturnsTheSamePairWithinTheGraceWindow() {
+        RefreshTokenResponse first = singleFlight.rotate("old", () -> rotation("user@example.com", "new"));
+        RefreshTokenResponse replay = singleFlight.rotate("old", () -> rotation("user@example.com", "other"));
+
+        assertThat(replay).isSameAs(first);
+        assertThat(rotations.get()).isEqualTo(1);
+    }
+
+    @Test
+    void revokingTheRotatedTokenEndsTheGraceWindow() {
+        singleFlight.rotate("old", () -> rotation("user@example.com", "new"));
+
+        assertThat(singleFlight.invalidate("old")).isEqualTo("new");
+
+        assertThatThrownBy(() -> singleFlight.rotate("old", this::alreadyRotated))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void revokingTheSuccessorEndsTheGraceWindow() {
+        singleFlight.rotate("old", () -> rotation("user@example.com", "new"));
+
+        assertThat(singleFlight.invalidate("new")).isNull();
+
+        assertThatThrownBy(() -> singleFlight.rotate("old", this::alreadyRotated))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void logoutAllEndsEveryGraceWindowOfTheUser() {
+        singleFlight.rotate("a", () -> rotation("user@example.com", "a2"));
+        singleFlight.rotate("b", () -> rotation("user@example.com", "b2"));
+        RefreshTokenResponse other = singleFlight.rotate("c", () -> rotation("other@example.com", "c2"));
+
+        singleFlight.invalidateAllForUser("user@example.com");
+
+        assertThatThrownBy(() -> singleFlight.rotate("a", this::alreadyRotated)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> singleFlight.rotate("b", this::alreadyRotated)).isInstanceOf(IllegalStateException.class);
+        assertThat(singleFlight.rotate("c", this::alreadyRotated)).isSameAs(other);
+    }
+
+    @Test
+    void rotationFinishingAfterLogoutAllIsNotRemembered() {
+        singleFlight.rotate("old", () -> {
+            // Logout from another device lands while this rotation runs
+            singleFlight.invalidateAllForUser("user@example.com");
+            return rotation("user@example.com", "new");
+        });
+
+        assertThatThrownBy(() -> singleFlight.rotate("old", this::alreadyRotated))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void followerGivesUpOnAStuckRotation() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<RefreshTokenResponse> leader = CompletableFuture.supplyAsync(() ->
+                singleFlight.rotate("old", () -> {
+                    leaderStarted.countDown();
+                    awaitQuietly(release);
+                    return rotation("user@example.com", "new");
+                }));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> singleFlight.rotate("old", this::alreadyRotated))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+
+        release.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    private RefreshTokenSingleFlight.Rotation rotation(String username, String successorRefreshTokenId) {
+        rotations.incrementAndGet();
+        return new RefreshTokenSingleFlight.Rotation(
+                username,
+                successorRefreshTokenId,
+                RefreshTokenResponse.builder()
+                        .accessToken("access-" + successorRefreshTokenId)
+                        .refreshToken("refresh-" + successorRefreshTokenId)
+                        .build()
+        );
+    }
+
+    // Stands in for the store rejecting a token that is no longer stored
+    private RefreshTokenSingleFlight.Rotation alreadyRotated() {
+        throw new IllegalStateException("Refresh token is invalid");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
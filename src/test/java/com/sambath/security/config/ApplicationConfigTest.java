@@ -0,0 +1,109 @@
+package com.sambath.security.config;
+
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.repository.UserRepository;
+import com.sambath.security.user.service.UserDetailsCache;
+import com.sambath.security.user.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ApplicationConfigTest {
+    private static final String EMAIL = "user@example.com";
+    private static final String PASSWORD = "Password1";
+    // Low strengths keep the hashes fast, what matters is that the stored one is below the configured one
+    private static final int STRENGTH = 5;
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    // Password hash in the users table, updatePassword writes it back
+    private final AtomicReference<String> storedPassword = new AtomicReference<>();
+
+    @Test
+    void loginWithALegacyHashRehashesItAsBCrypt() {
+        storedPassword.set(new BCryptPasswordEncoder(STRENGTH).encode(PASSWORD));
+
+        login();
+
+        verify(userRepository).updatePassword(eq(EMAIL), anyString());
+        assertThat(storedPassword.get()).startsWith("{bcrypt}$2a$0" + STRENGTH + "$");
+        assertThat(new BCryptPasswordEncoder().matches(PASSWORD, storedPassword.get().substring("{bcrypt}".length())))
+                .isTrue();
+    }
+
+    @Test
+    void loginWithALowerStrengthHashRehashesItAtTheConfiguredStrength() {
+        storedPassword.set("{bcrypt}" + new BCryptPasswordEncoder(STRENGTH - 1).encode(PASSWORD));
+
+        login();
+
+        verify(userRepository).updatePassword(eq(EMAIL), anyString());
+        assertThat(storedPassword.get()).startsWith("{bcrypt}$2a$0" + STRENGTH + "$");
+    }
+
+    @Test
+    void loginWithACurrentHashKeepsIt() {
+        String current = "{bcrypt}" + new BCryptPasswordEncoder(STRENGTH).encode(PASSWORD);
+        storedPassword.set(current);
+
+        login();
+
+        verify(userRepository, never()).updatePassword(any(), any());
+        assertThat(storedPassword.get()).isEqualTo(current);
+    }
+
+    // Sign in through the provider ApplicationConfig builds, with UserService storing rehashed passwords
+    private void login() {
+        when(userRepository.findUserByEmail(EMAIL)).thenAnswer(invocation -> Optional.of(User.builder()
+                .id(UUID.randomUUID().toString())
+                .name("Test User")
+                .email(EMAIL)
+                .password(storedPassword.get())
+                .role(Role.USER)
+                .provider(AuthProvider.email)
+                .enabled(true)
+                .build()));
+        doAnswer(invocation -> {
+            storedPassword.set(invocation.getArgument(1));
+            return null;
+        }).when(userRepository).updatePassword(eq(EMAIL), anyString());
+
+        ApplicationConfig applicationConfig = new ApplicationConfig(
+                userRepository,
+                new SimpleMeterRegistry(),
+                new AuthMetrics(new SimpleMeterRegistry())
+        );
+        ReflectionTestUtils.setField(applicationConfig, "USER_DETAILS_CACHE_ENABLED", false);
+        ReflectionTestUtils.setField(applicationConfig, "USER_DETAILS_CACHE_MAXIMUM_SIZE", 100L);
+        ReflectionTestUtils.setField(applicationConfig, "USER_DETAILS_CACHE_EXPIRATION_IN_SEC", 60L);
+        ReflectionTestUtils.setField(applicationConfig, "PASSWORD_ENCODER_STRENGTH", STRENGTH);
+        ReflectionTestUtils.setField(applicationConfig, "PASSWORD_ENCODER_POOL_SIZE", 1);
+        ReflectionTestUtils.setField(applicationConfig, "PASSWORD_ENCODER_QUEUE_CAPACITY", 4);
+        ReflectionTestUtils.setField(applicationConfig, "PASSWORD_ENCODER_MAX_WAIT_IN_MS", 5_000L);
+        AuthenticationProvider provider = applicationConfig.authenticationProvider(
+                new UserService(userRepository, mock(UserDetailsCache.class))
+        );
+
+        assertThat(provider.authenticate(new UsernamePasswordAuthenticationToken(EMAIL, PASSWORD)).isAuthenticated())
+                .isTrue();
+    }
+}
@@ -0,0 +1,70 @@
+package com.sambath.security.jfr;
+
+import com.sambath.security.exception.BadRequestException;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FlightRecordingServiceTest {
+    @TempDir
+    Path directory;
+
+    private FlightRecordingService service;
+
+    @AfterEach
+    void close() {
+        service.closeRecording();
+    }
+
+    @Test
+    void recordsAuthEventsUntilStopped() throws Exception {
+        service = new FlightRecordingService(directory, 300, 50);
+
+        service.start(0);
+        assertThatThrownBy(() -> service.start(0)).isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> service.finishedRecording()).isInstanceOf(BadRequestException.class);
+        RepositoryCallEvent.record("findUserByEmail", () -> "user");
+        service.stop();
+
+        Path file = service.finishedRecording();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.sambath.security.RepositoryCall"))
+                .toList();
+        assertThat(events).isNotEmpty();
+        assertThat(events.get(0).getString("operation")).isEqualTo("findUserByEmail");
+        assertThat(events.get(0).getString("outcome")).isEqualTo("ok");
+    }
+
+    @Test
+    void recordingStopsOnItsOwnAfterTheDuration() throws Exception {
+        service = new FlightRecordingService(directory, 1, 50);
+
+        // Longer than the maximum is capped to it
+        service.start(3600);
+        Thread.sleep(2500);
+
+        assertThat(Files.size(service.finishedRecording())).isPositive();
+        assertThatThrownBy(() -> service.stop()).isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void startingAgainReplacesThePreviousFile() {
+        service = new FlightRecordingService(directory, 300, 50);
+        service.start(0);
+        service.stop();
+        Path previous = service.finishedRecording();
+
+        service.start(0);
+
+        assertThat(previous).doesNotExist();
+    }
+}
@@ -0,0 +1,154 @@
+package com.sambath.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Differential test: the lean verifier may only accept what JJWT accepts, with the same claims
+class Hs256TokenVerifierTest {
+    private static final SecretKey KEY = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    private static final SecretKey OTHER_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final String HS256_HEADER = "{\"alg\":\"HS256\"}";
+    private static final long NOW_SECONDS = System.currentTimeMillis() / 1000;
+    private static final long IAT = NOW_SECONDS;
+    private static final long EXP = NOW_SECONDS + 3600;
+
+    private final Hs256TokenVerifier verifier = new Hs256TokenVerifier(KEY);
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(KEY).build();
+
+    @Test
+    void acceptsTokensMintedLikeJwtUtil() {
+        String accessToken = jjwtToken(Map.of(), KEY);
+        String statelessToken = jjwtToken(Map.of("userId", "7f1c", "role", "USER", "enabled", true), KEY);
+        String refreshToken = jjwtToken(Map.of(JwtUtil.REFRESH_TOKEN_ID_CLAIM, "0b5e3c1a-2d4f-4e6a-9b8c-7d6e5f4a3b2c"), KEY);
+
+        for (String token : new String[]{accessToken, statelessToken, refreshToken}) {
+            Claims claims = verifier.verify(token);
+            assertThat(claims).isNotNull();
+            assertThat(claims).isEqualTo(parser.parseClaimsJws(token).getBody());
+            assertThat(claims.getSubject()).isEqualTo("user@example.com");
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("tokens")
+    void agreesWithJjwt(String token) {
+        assertSameDecision(token);
+    }
+
+    @Test
+    void agreesWithJjwtOnEverySingleCharacterMutation() {
+        String token = jjwtToken(Map.of("userId", "7f1c", "role", "ADMIN", "enabled", false), KEY);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_.= ";
+        for (int i = 0; i < token.length(); i++) {
+            for (int j = 0; j < alphabet.length(); j += 7) {
+                char replacement = alphabet.charAt((j + i) % alphabet.length());
+                if (replacement != token.charAt(i)) {
+                    assertSameDecision(token.substring(0, i) + replacement + token.substring(i + 1));
+                }
+            }
+        }
+    }
+
+    private void assertSameDecision(String token) {
+        Claims fast = verifier.verify(token);
+        Claims reference;
+        try {
+            reference = parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            reference = null;
+        }
+        if (fast != null) {
+            assertThat(reference).as("JJWT must accept %s", token).isNotNull();
+            assertThat(fast).isEqualTo(reference);
+        }
+    }
+
+    static Stream<String> tokens() {
+        String claims = "{\"sub\":\"user@example.com\",\"iat\":" + IAT + ",\"exp\":" + EXP + "}";
+        return Stream.of(
+                // Well formed, both accept
+                signed(HS256_HEADER, claims, KEY),
+                signed(HS256_HEADER, "{}", KEY),
+                signed(HS256_HEADER, "{ \"sub\" : \"user@example.com\" ,\n\t\"exp\" : " + EXP + " }", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"sub\":\"b\",\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"n\":-0,\"big\":12345678901234,\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\"}", KEY),
+                // Shapes the lean verifier leaves to JJWT
+                signed(HS256_HEADER, "{\"sub\":\"us\\\"er\",\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"us\u00e9r\",\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":null,\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"roles\":[\"USER\"],\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"o\":{\"k\":1},\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"exp\":" + EXP + ".5}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"exp\":1e10}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"exp\":0" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"exp\":\"" + EXP + "\"}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"exp\":12345678901234567890}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"nbf\":" + IAT + ",\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"iat\":true,\"exp\":" + EXP + "}", KEY),
+                signed(HS256_HEADER, " " + claims, KEY),
+                signed(HS256_HEADER, claims + " ", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\",}", KEY),
+                signed(HS256_HEADER, "{\"sub\":\"a\"}}", KEY),
+                signed(HS256_HEADER, "{\"sub\" \"a\"}", KEY),
+                signed(HS256_HEADER, "{\"sub\":tru}", KEY),
+                signed(HS256_HEADER, "[\"sub\"]", KEY),
+                signed(HS256_HEADER, "plain text", KEY),
+                signed("{\"typ\":\"JWT\",\"alg\":\"HS256\"}", claims, KEY),
+                signed("{\"alg\":\"HS256\",\"zip\":\"DEF\"}", claims, KEY),
+                signed("{\"alg\":\"none\"}", claims, KEY),
+                // Rejected by both
+                signed(HS256_HEADER, "{\"sub\":\"a\",\"exp\":" + (NOW_SECONDS - 3600) + "}", KEY),
+                signed(HS256_HEADER, claims, OTHER_KEY),
+                jjwtToken(Map.of(), OTHER_KEY),
+                signed(HS256_HEADER, claims, KEY) + "=",
+                signed(HS256_HEADER, claims, KEY) + ".",
+                signed(HS256_HEADER, claims, KEY).substring(0, 60),
+                "eyJhbGciOiJIUzI1NiJ9",
+                "eyJhbGciOiJIUzI1NiJ9.",
+                "eyJhbGciOiJIUzI1NiJ9..",
+                "not-a-token"
+        );
+    }
+
+    private static String jjwtToken(Map<String, Object> extraClaims, SecretKey key) {
+        return Jwts.builder()
+                .setClaims(extraClaims)
+                .setSubject("user@example.com")
+                .setIssuedAt(new Date(IAT * 1000))
+                .setExpiration(new Date(EXP * 1000))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    private static String signed(String header, String payload, SecretKey key) {
+        String signingInput = BASE64URL.encodeToString(header.getBytes(StandardCharsets.UTF_8))
+                + "." + BASE64URL.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            byte[] signature = mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + BASE64URL.encodeToString(signature);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.sambath.security.jwt;
+
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.oauth2.user.UserPrincipal;
+import com.sambath.security.ratelimit.ConcurrencyLimiters;
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.service.UserSnapshot;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JwtAuthenticationFilterTest {
+    private static final String ACCESS_TOKEN_SECRET_KEY = "dGVzdC1hY2Nlc3MtdG9rZW4tc2VjcmV0LWtleS0wMTIzNDU2Nzg5";
+    private static final String REFRESH_TOKEN_SECRET_KEY = "dGVzdC1yZWZyZXNoLXRva2VuLXNlY3JldC1rZXktMDEyMzQ1Njc4OQ==";
+    private static final UserSnapshot USER = UserSnapshot.of(User.builder()
+            .id(UUID.randomUUID().toString())
+            .name("Test User")
+            .email("user@example.com")
+            .password("password")
+            .role(Role.USER)
+            .provider(AuthProvider.email)
+            .enabled(true)
+            .build());
+
+    // Stands in for the user repository behind ApplicationConfig.userDetailsService
+    private final UserDetailsService userDetailsService = mock(UserDetailsService.class);
+    private final JwtUtil statelessJwtUtil = jwtUtil(true);
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void statelessTokenAuthenticatesWithoutUserLookup() throws Exception {
+        Authentication authentication = filter(statelessJwtUtil).authenticate(statelessJwtUtil.generateAccessToken(USER));
+
+        verify(userDetailsService, never()).loadUserByUsername(any());
+        assertThat(authentication).isNotNull();
+        assertThat(authentication.getPrincipal()).isInstanceOf(UserPrincipal.class);
+        assertThat(((UserPrincipal) authentication.getPrincipal()).getId()).isEqualTo(USER.id());
+        assertThat(authentication.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("USER");
+    }
+
+    @Test
+    void tokenWithoutStatelessClaimsFallsBackToUserLookup() throws Exception {
+        when(userDetailsService.loadUserByUsername(USER.getUsername())).thenReturn(USER);
+        // Issued before stateless mode was turned on, or for a principal without id and role
+        UserDetails plainUser = org.springframework.security.core.userdetails.User
+                .withUsername(USER.getUsername()).password("password").authorities("USER").build();
+
+        Authentication authentication = filter(statelessJwtUtil).authenticate(statelessJwtUtil.generateAccessToken(plainUser));
+
+        verify(userDetailsService).loadUserByUsername(USER.getUsername());
+        assertThat(authentication.getPrincipal()).isSameAs(USER);
+    }
+
+    @Test
+    void statelessClaimsAreIgnoredWhenStatelessModeIsOff() throws Exception {
+        when(userDetailsService.loadUserByUsername(USER.getUsername())).thenReturn(USER);
+        JwtUtil jwtUtil = jwtUtil(false);
+
+        Authentication authentication = filter(jwtUtil).authenticate(statelessJwtUtil.generateAccessToken(USER));
+
+        verify(userDetailsService).loadUserByUsername(USER.getUsername());
+        assertThat(authentication.getPrincipal()).isSameAs(USER);
+    }
+
+    @Test
+    void tamperedRoleClaimIsRejected() {
+        String[] parts = statelessJwtUtil.generateAccessToken(USER).split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+        assertThat(payload).contains("\"role\":\"USER\"");
+        String tampered = parts[0] + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                        payload.replace("\"role\":\"USER\"", "\"role\":\"ADMIN\"").getBytes(StandardCharsets.UTF_8))
+                + "." + parts[2];
+
+        assertThatThrownBy(() -> filter(statelessJwtUtil).authenticate(tampered)).isInstanceOf(SignatureException.class);
+        verify(userDetailsService, never()).loadUserByUsername(any());
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    private TestFilter filter(JwtUtil jwtUtil) {
+        return new TestFilter(new JwtAuthenticationFilter(
+                jwtUtil,
+                userDetailsService,
+                new ConcurrencyLimiters(new SimpleMeterRegistry(), false, 20, 10, 1000, 2.0, 0.2)
+        ));
+    }
+
+    private static JwtUtil jwtUtil(boolean statelessAccessToken) {
+        AppProperties appProperties = new AppProperties();
+        AppProperties.Jwt jwt = appProperties.getAuth().getJwt();
+        jwt.setAccessTokenSecretKey(ACCESS_TOKEN_SECRET_KEY);
+        jwt.setRefreshTokenSecretKey(REFRESH_TOKEN_SECRET_KEY);
+        jwt.setStatelessAccessToken(statelessAccessToken);
+        JwtUtil jwtUtil = new JwtUtil(
+                appProperties,
+                new JwtKeyRegistry(appProperties),
+                new AuthMetrics(new SimpleMeterRegistry())
+        );
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    private record TestFilter(JwtAuthenticationFilter filter) {
+        // Run the filter for a bearer token and return the authentication it left in the security context
+        Authentication authenticate(String token) throws Exception {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/demo-controller");
+            request.addHeader("Authorization", "Bearer " + token);
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.sambath.security.jwt;
+
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.service.UserSnapshot;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Verifies access tokens through JwtUtil, so both the lean HS256 verifier and JJWT are covered
+class JwtKeyRegistryTest {
+    private static final String ACCESS_TOKEN_SECRET_KEY = "dGVzdC1hY2Nlc3MtdG9rZW4tc2VjcmV0LWtleS0wMTIzNDU2Nzg5";
+    private static final String REFRESH_TOKEN_SECRET_KEY = "dGVzdC1yZWZyZXNoLXRva2VuLXNlY3JldC1rZXktMDEyMzQ1Njc4OQ==";
+    private static final UserSnapshot USER = UserSnapshot.of(User.builder()
+            .id(UUID.randomUUID().toString())
+            .name("Test User")
+            .email("user@example.com")
+            .role(Role.USER)
+            .provider(AuthProvider.email)
+            .enabled(true)
+            .build());
+
+    private final MutableClock clock = new MutableClock(Instant.now());
+    // Access token signed with the HMAC secret before the switch to ES256, it has no kid
+    private final String legacyToken = jwtUtil(properties("HS256")).generateAccessToken(USER);
+
+    @Test
+    void legacyHmacTokensAreRejectedByDefault() {
+        JwtUtil jwtUtil = jwtUtil(properties("ES256"));
+
+        assertThatThrownBy(() -> jwtUtil.parseAccessToken(legacyToken)).isInstanceOf(SignatureException.class);
+        // Tokens signed with the active key still verify
+        assertThat(jwtUtil.extractUsernameAccessToken(jwtUtil.generateAccessToken(USER))).isEqualTo("user@example.com");
+    }
+
+    @Test
+    void legacyHmacTokensAreAcceptedOnlyUntilTheSunset() {
+        AppProperties appProperties = properties("ES256");
+        appProperties.getAuth().getJwt().setAcceptLegacyHmac(true);
+        appProperties.getAuth().getJwt().setLegacyHmacSunset(clock.instant().plus(Duration.ofHours(1)));
+        JwtUtil jwtUtil = jwtUtil(appProperties);
+
+        assertThat(jwtUtil.extractUsernameAccessToken(legacyToken)).isEqualTo("user@example.com");
+
+        clock.advance(Duration.ofHours(1));
+
+        assertThatThrownBy(() -> jwtUtil.parseAccessToken(legacyToken)).isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void cachedLegacyHmacTokensStopWorkingAtTheSunset() {
+        AppProperties appProperties = properties("ES256");
+        appProperties.getAuth().getJwt().setAcceptLegacyHmac(true);
+        appProperties.getAuth().getJwt().setLegacyHmacSunset(clock.instant().plus(Duration.ofHours(1)));
+        appProperties.getAuth().getJwt().getVerifiedTokenCache().setEnabled(true);
+        JwtUtil jwtUtil = jwtUtil(appProperties);
+        String token = jwtUtil.generateAccessToken(USER);
+
+        jwtUtil.parseAccessToken(legacyToken);
+        jwtUtil.parseAccessToken(legacyToken);
+        jwtUtil.parseAccessToken(token);
+        jwtUtil.parseAccessToken(token);
+        clock.advance(Duration.ofHours(1));
+
+        assertThatThrownBy(() -> jwtUtil.parseAccessToken(legacyToken)).isInstanceOf(SignatureException.class);
+        // Tokens signed with a key id are still served from the cache
+        assertThat(jwtUtil.extractUsernameAccessToken(token)).isEqualTo("user@example.com");
+        assertThat(jwtUtil.getVerifiedTokenCache().stats().hitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void acceptingLegacyHmacRequiresASunset() {
+        AppProperties appProperties = properties("ES256");
+        appProperties.getAuth().getJwt().setAcceptLegacyHmac(true);
+
+        assertThatThrownBy(() -> new JwtKeyRegistry(appProperties, clock))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("legacy-hmac-sunset");
+    }
+
+    private JwtUtil jwtUtil(AppProperties appProperties) {
+        JwtUtil jwtUtil = new JwtUtil(
+                appProperties,
+                new JwtKeyRegistry(appProperties, clock),
+                new AuthMetrics(new SimpleMeterRegistry())
+        );
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    private static AppProperties properties(String signingAlgorithm) {
+        AppProperties appProperties = new AppProperties();
+        AppProperties.Jwt jwt = appProperties.getAuth().getJwt();
+        jwt.setAccessTokenSecretKey(ACCESS_TOKEN_SECRET_KEY);
+        jwt.setRefreshTokenSecretKey(REFRESH_TOKEN_SECRET_KEY);
+        // ES256 uses an ephemeral key pair generated by JwtKeyRegistry
+        jwt.setSigningAlgorithm(signingAlgorithm);
+        return appProperties;
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.sambath.security.jwt;
+
+import com.sambath.security.auth.dto.JwtToken;
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.oauth2.user.UserPrincipal;
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.repository.UserRepository;
+import com.sambath.security.user.service.UserSnapshot;
+import com.sambath.security.user.service.JpaRefreshTokenStore;
+import com.sambath.security.user.service.RefreshTokenWriteBehind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "app.auth.jwt.access-token-secret-key=dGVzdC1hY2Nlc3MtdG9rZW4tc2VjcmV0LWtleS0wMTIzNDU2Nzg5",
+        "app.auth.jwt.refresh-token-secret-key=dGVzdC1yZWZyZXNoLXRva2VuLXNlY3JldC1rZXktMDEyMzQ1Njc4OQ=="
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnableConfigurationProperties(AppProperties.class)
+@Import({
+        JwtService.class,
+        JwtUtil.class,
+        JwtKeyRegistry.class,
+        AuthMetrics.class,
+        SimpleMeterRegistry.class,
+        JpaRefreshTokenStore.class,
+        RefreshTokenWriteBehind.class
+})
+class JwtServiceTest {
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private JwtService jwtService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Test
+    void generateJwtTokenIssuesExactlyOneInsert() {
+        User user = userRepository.save(User.builder()
+                .name("Test User")
+                .email(UUID.randomUUID() + "@example.com")
+                .password("password")
+                .role(Role.USER)
+                .provider(AuthProvider.email)
+                .enabled(true)
+                .build());
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        jwtService.generateJwtToken(UserSnapshot.of(user));
+
+        // Only the refresh token row is written, the user is neither loaded nor merged
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(1);
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void generateJwtTokenFromPrincipalNeedsNoUserLookup() {
+        User user = userRepository.save(User.builder()
+                .name("Test User")
+                .email(UUID.randomUUID() + "@example.com")
+                .role(Role.USER)
+                .provider(AuthProvider.google)
+                .enabled(true)
+                .build());
+        UserPrincipal userPrincipal = UserPrincipal.create(user, Map.of());
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        JwtToken jwtToken = jwtService.generateJwtToken(userPrincipal);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(jwtUtil.extractUsernameAccessToken(jwtToken.getAccessToken())).isEqualTo(user.getEmail());
+        assertThat(jwtUtil.extractRefreshTokenId(jwtToken.getRefreshToken())).isNotBlank();
+    }
+}
@@ -0,0 +1,109 @@
+package com.sambath.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VerifiedTokenCacheTest {
+    private static final Key KEY = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    private static final Key OTHER_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger verifications = new AtomicInteger();
+    private final Function<String, Claims> verifier = token -> {
+        verifications.incrementAndGet();
+        return Jwts.parserBuilder().setSigningKey(KEY).build().parseClaimsJws(token).getBody();
+    };
+
+    @Test
+    void verifiedTokenIsServedFromCacheUntilItExpires() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, nanos::get);
+        String token = token(KEY, "user@example.com", 60_000);
+
+        assertThat(cache.get(token, verifier).getSubject()).isEqualTo("user@example.com");
+        assertThat(cache.get(token, verifier).getSubject()).isEqualTo("user@example.com");
+        assertThat(verifications).hasValue(1);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        // Past its exp the entry is gone and the token goes through the verifier again
+        cache.get(token, verifier);
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void remainingLifetimeIsMeasuredWithTheTicker() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, nanos::get);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        // Half of its lifetime has already passed by the cache's clock when the token is first seen
+        String token = token(KEY, "user@example.com", 60_000);
+
+        cache.get(token, verifier);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        cache.get(token, verifier);
+
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void claimsAlreadyPastTheirExpirationAreNeverServedFromCache() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, nanos::get);
+        Claims expired = Jwts.claims().setSubject("user@example.com").setExpiration(new Date(System.currentTimeMillis() - 1000));
+        Function<String, Claims> lenientVerifier = token -> {
+            verifications.incrementAndGet();
+            return expired;
+        };
+
+        cache.get("token", lenientVerifier);
+        cache.get("token", lenientVerifier);
+
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void tokenWithBadSignatureIsNeverCached() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, nanos::get);
+        String forged = token(OTHER_KEY, "admin@example.com", 60_000);
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> cache.get(forged, verifier)).isInstanceOf(SignatureException.class);
+        }
+
+        assertThat(verifications).hasValue(3);
+        assertThat(cache.getCache().estimatedSize()).isZero();
+    }
+
+    @Test
+    void sizeStaysWithinTheBound() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, nanos::get);
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.get(token(KEY, "user" + i + "@example.com", 60_000), verifier);
+        }
+        cache.getCache().cleanUp();
+
+        assertThat(cache.getCache().estimatedSize()).isLessThanOrEqualTo(100);
+    }
+
+    private static String token(Key key, String subject, long expiresInMs) {
+        return Jwts.builder()
+                .setSubject(subject)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + expiresInMs))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
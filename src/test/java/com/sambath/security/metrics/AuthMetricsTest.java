@@ -0,0 +1,46 @@
+package com.sambath.security.metrics;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuthMetricsTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AuthMetrics authMetrics = new AuthMetrics(meterRegistry);
+
+    @Test
+    void countsRejectedTokensByReason() {
+        authMetrics.tokenRejected(new ExpiredJwtException(null, null, "expired"));
+        authMetrics.tokenRejected(new SignatureException("bad signature"));
+        authMetrics.tokenRejected(new MalformedJwtException("malformed"));
+        authMetrics.tokenRejected(new IllegalArgumentException("empty"));
+
+        assertThat(failures("expired")).isEqualTo(1);
+        assertThat(failures("bad_signature")).isEqualTo(1);
+        assertThat(failures("malformed")).isEqualTo(2);
+        assertThat(failures("bad_credentials")).isZero();
+    }
+
+    @Test
+    void timersAreTaggedByTokenTypeOnly() {
+        authMetrics.accessTokenParse().record(1, TimeUnit.MILLISECONDS);
+        authMetrics.refreshTokenIssue().record(1, TimeUnit.MILLISECONDS);
+        authMetrics.oauth2UserInfo("google").record(1, TimeUnit.MILLISECONDS);
+        authMetrics.oauth2UserInfo("google").record(1, TimeUnit.MILLISECONDS);
+
+        assertThat(meterRegistry.get("auth.token.parse").tag("type", "access").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("auth.token.issue").tag("type", "refresh").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("auth.oauth2.userinfo").timers()).hasSize(1);
+        assertThat(meterRegistry.get("auth.oauth2.userinfo").timer().count()).isEqualTo(2);
+    }
+
+    private double failures(String reason) {
+        return meterRegistry.get("auth.failures").tag("reason", reason).counter().count();
+    }
+}
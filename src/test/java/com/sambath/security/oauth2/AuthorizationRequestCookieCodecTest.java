@@ -0,0 +1,95 @@
+package com.sambath.security.oauth2;
+
+import com.sambath.security.auth.util.CookieUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuthorizationRequestCookieCodecTest {
+    private static final String SECRET = Base64.getEncoder().encodeToString(new byte[32]);
+
+    private final AuthorizationRequestCookieCodec codec = new AuthorizationRequestCookieCodec(SECRET);
+
+    static OAuth2AuthorizationRequest googleRequest() {
+        return OAuth2AuthorizationRequest.authorizationCode()
+                .authorizationUri("https://accounts.google.com/o/oauth2/v2/auth")
+                .clientId("123456789012-abcdefghijklmnopqrstuvwxyz012345.apps.googleusercontent.com")
+                .redirectUri("http://localhost:8080/api/v1/oauth2/callback/google")
+                .scopes(new LinkedHashSet<>(List.of("openid", "profile", "email")))
+                .state(UUID.randomUUID().toString())
+                .additionalParameters(Map.of("nonce", "Fz0aJk1l2mN3oP4qR5sT6uV7wX8yZ9aB0cD1eF2gH3i"))
+                .attributes(Map.of(
+                        "registration_id", "google",
+                        "nonce", "kLmNoPqRsTuVwXyZ0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWX"
+                ))
+                .build();
+    }
+
+    @Test
+    void roundTripsEveryFieldUsedToFinishTheLogin() {
+        OAuth2AuthorizationRequest request = googleRequest();
+
+        OAuth2AuthorizationRequest decoded = codec.decode(codec.encode(request));
+
+        assertThat(decoded).isNotNull();
+        assertThat(decoded.getGrantType()).isEqualTo(request.getGrantType());
+        assertThat(decoded.getResponseType()).isEqualTo(request.getResponseType());
+        assertThat(decoded.getAuthorizationUri()).isEqualTo(request.getAuthorizationUri());
+        assertThat(decoded.getClientId()).isEqualTo(request.getClientId());
+        assertThat(decoded.getRedirectUri()).isEqualTo(request.getRedirectUri());
+        assertThat(decoded.getScopes()).containsExactlyElementsOf(request.getScopes());
+        assertThat(decoded.getState()).isEqualTo(request.getState());
+        assertThat(decoded.getAdditionalParameters()).isEqualTo(request.getAdditionalParameters());
+        assertThat(decoded.getAttributes()).isEqualTo(request.getAttributes());
+        assertThat(decoded.getAuthorizationRequestUri()).isEqualTo(request.getAuthorizationRequestUri());
+    }
+
+    @Test
+    void isMuchSmallerThanJavaSerialization() {
+        OAuth2AuthorizationRequest request = googleRequest();
+
+        assertThat(codec.encode(request).length() * 3).isLessThan(CookieUtils.serialize(request).length());
+    }
+
+    @Test
+    void fitsWellWithinTheBrowserCookieLimit() {
+        OAuth2AuthorizationRequest request = googleRequest();
+
+        // Sent with every request until the login finishes, browsers drop cookies above 4096 bytes.
+        // Java serialization of the same request is around 2.5 KB.
+        assertThat(codec.encode(request).length()).isLessThanOrEqualTo(512);
+        assertThat(CookieUtils.serialize(request).length()).isLessThan(4096);
+    }
+
+    @Test
+    void rejectsTamperedCookies() {
+        String cookie = codec.encode(googleRequest());
+        char[] chars = cookie.toCharArray();
+        // The last character may carry unused padding bits, every other one changes the decoded bytes
+        for (int i = 0; i < chars.length - 1; i++) {
+            char original = chars[i];
+            chars[i] = original == 'A' ? 'B' : 'A';
+            assertThat(codec.decode(new String(chars))).isNull();
+            chars[i] = original;
+        }
+        assertThat(codec.decode(cookie.substring(0, cookie.length() - 4))).isNull();
+        assertThat(codec.decode("")).isNull();
+        assertThat(codec.decode("not base64!")).isNull();
+    }
+
+    @Test
+    void rejectsCookiesSignedWithAnotherKeyAndJavaSerializedCookies() {
+        OAuth2AuthorizationRequest request = googleRequest();
+        AuthorizationRequestCookieCodec otherNode = new AuthorizationRequestCookieCodec("");
+
+        assertThat(codec.decode(otherNode.encode(request))).isNull();
+        assertThat(codec.decode(CookieUtils.serialize(request))).isNull();
+    }
+}
@@ -0,0 +1,129 @@
+package com.sambath.security.oauth2;
+
+import com.sambath.security.metrics.AuthMetrics;
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.repository.UserRepository;
+import com.sambath.security.user.service.UserDetailsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomOAuth2UserServiceTest {
+    private final UserRepository userRepository = mock(UserRepository.class);
+    // Stands in for the provider's user info endpoint
+    private final RestTemplate userInfoEndpoint = mock(RestTemplate.class);
+
+    @Test
+    void userWithAValidNameAndEmailIsUpserted() {
+        when(userRepository.upsertOAuth2User(anyString(), eq("Test User"), any(), any(), eq("user@example.com"),
+                any(), eq("github"), eq("1234"))).thenReturn(Optional.of(User.builder()
+                .id(UUID.randomUUID().toString())
+                .name("Test User")
+                .email("user@example.com")
+                .role(Role.USER)
+                .provider(AuthProvider.github)
+                .providerId("1234")
+                .enabled(true)
+                .build()));
+
+        OAuth2User user = userService(Map.of("id", 1234, "name", "Test User", "email", "user@example.com"))
+                .loadUser(githubRequest());
+
+        assertThat(user.getAttributes()).containsEntry("email", "user@example.com");
+    }
+
+    @Test
+    void userWithoutANameIsRejectedBeforeTheUpsert() {
+        CustomOAuth2UserService userService = userService(Map.of("id", 1234, "email", "user@example.com"));
+
+        assertThatThrownBy(() -> userService.loadUser(githubRequest()))
+                .isInstanceOf(InternalAuthenticationServiceException.class)
+                .hasMessageContaining("name");
+        verifyNoUpsert();
+    }
+
+    @Test
+    void userWithABlankNameIsRejectedBeforeTheUpsert() {
+        CustomOAuth2UserService userService = userService(Map.of("id", 1234, "name", " ", "email", "user@example.com"));
+
+        assertThatThrownBy(() -> userService.loadUser(githubRequest()))
+                .isInstanceOf(InternalAuthenticationServiceException.class)
+                .hasMessageContaining("name");
+        verifyNoUpsert();
+    }
+
+    @Test
+    void userWithAMalformedEmailIsRejectedBeforeTheUpsert() {
+        CustomOAuth2UserService userService = userService(Map.of("id", 1234, "name", "Test User", "email", "user@"));
+
+        assertThatThrownBy(() -> userService.loadUser(githubRequest()))
+                .isInstanceOf(InternalAuthenticationServiceException.class)
+                .hasMessageContaining("email");
+        verifyNoUpsert();
+    }
+
+    @SuppressWarnings("unchecked")
+    private CustomOAuth2UserService userService(Map<String, Object> userInfo) {
+        when(userInfoEndpoint.exchange(any(RequestEntity.class), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(userInfo));
+        OAuth2ProviderHttpClient oAuth2ProviderHttpClient = mock(OAuth2ProviderHttpClient.class);
+        when(oAuth2ProviderHttpClient.userInfoRestTemplate()).thenReturn(userInfoEndpoint);
+        CustomOAuth2UserService userService = new CustomOAuth2UserService(
+                userRepository,
+                new UserDetailsCache(username -> null, true, 100, Duration.ofMinutes(1)),
+                new AuthMetrics(new SimpleMeterRegistry()),
+                oAuth2ProviderHttpClient,
+                Validation.buildDefaultValidatorFactory().getValidator()
+        );
+        userService.init();
+        return userService;
+    }
+
+    private void verifyNoUpsert() {
+        verify(userRepository, never()).upsertOAuth2User(any(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    private static OAuth2UserRequest githubRequest() {
+        ClientRegistration registration = ClientRegistration.withRegistrationId("github")
+                .clientId("client-id")
+                .clientSecret("client-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/api/v1/oauth2/callback/{registrationId}")
+                .authorizationUri("https://github.com/login/oauth/authorize")
+                .tokenUri("https://github.com/login/oauth/access_token")
+                .userInfoUri("https://api.github.com/user")
+                .userNameAttributeName("id")
+                .build();
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "access-token", Instant.now(), Instant.now().plusSeconds(60));
+        return new OAuth2UserRequest(registration, accessToken);
+    }
+}
@@ -0,0 +1,184 @@
+package com.sambath.security.oauth2;
+
+import com.sambath.security.config.AppProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs the client against a local stub provider that can be made slow or hold requests
+class OAuth2ProviderHttpClientTest {
+    private static final String USER_INFO = "{\"id\":\"1234\",\"name\":\"Test User\",\"email\":\"user@example.com\"}";
+
+    private final AtomicLong delayInMs = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private HttpServer provider;
+    private ExecutorService providerExecutor;
+    private OAuth2ProviderHttpClient client;
+
+    @BeforeEach
+    void startProvider() throws IOException {
+        provider = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        providerExecutor = Executors.newCachedThreadPool();
+        provider.setExecutor(providerExecutor);
+        provider.createContext("/userinfo", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+                Thread.sleep(delayInMs.get());
+                byte[] body = USER_INFO.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // The client gave up on the response
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        provider.start();
+    }
+
+    @AfterEach
+    void stopProvider() {
+        if (client != null) {
+            client.close();
+        }
+        release.countDown();
+        provider.stop(0);
+        providerExecutor.shutdownNow();
+    }
+
+    @Test
+    void loadsUserInfoOverKeptAliveConnections() {
+        client = new OAuth2ProviderHttpClient(config(), List.of(registration()));
+        DefaultOAuth2UserService userService = new DefaultOAuth2UserService();
+        userService.setRestOperations(client.userInfoRestTemplate());
+
+        for (int i = 0; i < 5; i++) {
+            OAuth2User user = userService.loadUser(userRequest());
+            assertThat(user.getAttributes()).containsEntry("email", "user@example.com");
+        }
+
+        // Every call reused the same pooled connection
+        assertThat(clientPorts).hasSize(1);
+    }
+
+    @Test
+    void readTimeoutOfTheProviderBoundsASlowCall() {
+        AppProperties.HttpClient config = config();
+        AppProperties.ProviderHttpClient stub = new AppProperties.ProviderHttpClient();
+        stub.setReadTimeoutInMs(200L);
+        config.getProviders().put("stub", stub);
+        client = new OAuth2ProviderHttpClient(config, List.of(registration()));
+        DefaultOAuth2UserService userService = new DefaultOAuth2UserService();
+        userService.setRestOperations(client.userInfoRestTemplate());
+        delayInMs.set(3000);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> userService.loadUser(userRequest()))
+                .isInstanceOf(OAuth2AuthenticationException.class);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+    }
+
+    @Test
+    void callsBeyondTheProviderLimitFailAfterTheConnectionRequestTimeout() throws Exception {
+        AppProperties.HttpClient config = config();
+        config.setConnectionRequestTimeoutInMs(200);
+        AppProperties.ProviderHttpClient stub = new AppProperties.ProviderHttpClient();
+        stub.setMaxConnections(2);
+        config.getProviders().put("stub", stub);
+        client = new OAuth2ProviderHttpClient(config, List.of(registration()));
+        RestTemplate restTemplate = client.userInfoRestTemplate();
+        String userInfoUri = registration().getProviderDetails().getUserInfoEndpoint().getUri();
+        release = new CountDownLatch(1);
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> heldCalls = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                heldCalls.add(callers.submit(() -> restTemplate.getForObject(userInfoUri, String.class)));
+            }
+            while (inFlight.get() < 2) {
+                Thread.sleep(10);
+            }
+
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> restTemplate.getForObject(userInfoUri, String.class))
+                    .isInstanceOf(ResourceAccessException.class);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+
+            release.countDown();
+            for (Future<String> heldCall : heldCalls) {
+                assertThat(heldCall.get(5, TimeUnit.SECONDS)).contains("user@example.com");
+            }
+            assertThat(maxInFlight.get()).isEqualTo(2);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static AppProperties.HttpClient config() {
+        AppProperties.HttpClient config = new AppProperties.HttpClient();
+        config.setConnectTimeoutInMs(1000);
+        config.setReadTimeoutInMs(5000);
+        return config;
+    }
+
+    private ClientRegistration registration() {
+        String baseUri = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + provider.getAddress().getPort();
+        return ClientRegistration.withRegistrationId("stub")
+                .clientId("client-id")
+                .clientSecret("client-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/api/v1/oauth2/callback/{registrationId}")
+                .authorizationUri(baseUri + "/authorize")
+                .tokenUri(baseUri + "/token")
+                .userInfoUri(baseUri + "/userinfo")
+                .userNameAttributeName("id")
+                .build();
+    }
+
+    private OAuth2UserRequest userRequest() {
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "access-token", Instant.now(), Instant.now().plusSeconds(60));
+        return new OAuth2UserRequest(registration(), accessToken);
+    }
+}
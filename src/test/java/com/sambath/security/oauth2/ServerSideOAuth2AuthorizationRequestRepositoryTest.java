@@ -0,0 +1,128 @@
+package com.sambath.security.oauth2;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.sambath.security.oauth2.HttpCookieOAuth2AuthorizationRequestRepository.OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerSideOAuth2AuthorizationRequestRepositoryTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private final InMemoryAuthorizationRequestStore store = new InMemoryAuthorizationRequestStore(1000, nanos::get);
+    private final ServerSideOAuth2AuthorizationRequestRepository repository =
+            new ServerSideOAuth2AuthorizationRequestRepository(store);
+
+    @Test
+    void browserOnlyCarriesTheState() {
+        OAuth2AuthorizationRequest authorizationRequest = AuthorizationRequestCookieCodecTest.googleRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveAuthorizationRequest(authorizationRequest, new MockHttpServletRequest(), response);
+
+        Cookie cookie = response.getCookie(OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME);
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.getValue()).isEqualTo(authorizationRequest.getState());
+        assertThat(repository.loadAuthorizationRequest(callback(authorizationRequest.getState(), cookie.getValue())))
+                .isSameAs(authorizationRequest);
+    }
+
+    @Test
+    void removeReturnsTheRequestOnlyOnce() {
+        OAuth2AuthorizationRequest authorizationRequest = save();
+        String state = authorizationRequest.getState();
+
+        assertThat(repository.removeAuthorizationRequest(callback(state, state), new MockHttpServletResponse()))
+                .isSameAs(authorizationRequest);
+        assertThat(repository.removeAuthorizationRequest(callback(state, state), new MockHttpServletResponse())).isNull();
+        assertThat(repository.loadAuthorizationRequest(callback(state, state))).isNull();
+    }
+
+    @Test
+    void concurrentCallbacksWithTheSameStateGetTheRequestOnce() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 100; round++) {
+                String state = save().getState();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<OAuth2AuthorizationRequest>> removals = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    removals.add(executor.submit(() -> {
+                        start.await();
+                        return repository.removeAuthorizationRequest(callback(state, state), new MockHttpServletResponse());
+                    }));
+                }
+                start.countDown();
+                int removed = 0;
+                for (Future<OAuth2AuthorizationRequest> removal : removals) {
+                    removed += removal.get() != null ? 1 : 0;
+                }
+                assertThat(removed).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void callbackFromAnotherBrowserFindsNothing() {
+        String state = save().getState();
+
+        assertThat(repository.loadAuthorizationRequest(callback(state, null))).isNull();
+        assertThat(repository.loadAuthorizationRequest(callback(state, "other-state"))).isNull();
+        assertThat(repository.removeAuthorizationRequest(callback(state, "other-state"), new MockHttpServletResponse()))
+                .isNull();
+        // The request is still there for the browser that started the login
+        assertThat(repository.loadAuthorizationRequest(callback(state, state))).isNotNull();
+    }
+
+    @Test
+    void expiredRequestsAreReclaimed() {
+        String state = save().getState();
+
+        nanos.addAndGet(Duration.ofSeconds(179).toNanos());
+        assertThat(repository.loadAuthorizationRequest(callback(state, state))).isNotNull();
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(repository.loadAuthorizationRequest(callback(state, state))).isNull();
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    void storeIsBounded() {
+        InMemoryAuthorizationRequestStore small = new InMemoryAuthorizationRequestStore(10, nanos::get);
+        for (int i = 0; i < 100; i++) {
+            small.save("state-" + i, AuthorizationRequestCookieCodecTest.googleRequest(), Duration.ofMinutes(3));
+        }
+
+        assertThat(small.size()).isLessThanOrEqualTo(10);
+    }
+
+    private OAuth2AuthorizationRequest save() {
+        OAuth2AuthorizationRequest authorizationRequest = AuthorizationRequestCookieCodecTest.googleRequest();
+        repository.saveAuthorizationRequest(authorizationRequest, new MockHttpServletRequest(), new MockHttpServletResponse());
+        return authorizationRequest;
+    }
+
+    private static MockHttpServletRequest callback(String state, String cookieState) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/oauth2/callback/google");
+        request.setParameter("state", state);
+        request.setParameter("code", "authorization-code");
+        if (cookieState != null) {
+            request.setCookies(new Cookie(OAUTH2_AUTHORIZATION_REQUEST_COOKIE_NAME, cookieState));
+        }
+        return request;
+    }
+}
@@ -0,0 +1,36 @@
+package com.sambath.security.password;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BCryptStrengthCalibratorTest {
+
+    @Test
+    void targetBelowOneHashPicksTheMinimum() {
+        assertThat(BCryptStrengthCalibrator.calibrate(Duration.ZERO, 4, 6)).isEqualTo(4);
+    }
+
+    @Test
+    void targetAboveEveryStrengthPicksTheMaximum() {
+        assertThat(BCryptStrengthCalibrator.calibrate(Duration.ofHours(1), 4, 6)).isEqualTo(6);
+    }
+
+    @Test
+    void equalBoundsPickThatStrength() {
+        assertThat(BCryptStrengthCalibrator.calibrate(Duration.ofHours(1), 5, 5)).isEqualTo(5);
+    }
+
+    @Test
+    void boundsOutsideBCryptOrInvertedAreRejected() {
+        assertThatThrownBy(() -> BCryptStrengthCalibrator.calibrate(Duration.ZERO, 6, 4))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BCryptStrengthCalibrator.calibrate(Duration.ZERO, 3, 6))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BCryptStrengthCalibrator.calibrate(Duration.ZERO, 4, 32))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
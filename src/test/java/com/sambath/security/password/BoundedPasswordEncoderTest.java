@@ -0,0 +1,86 @@
+package com.sambath.security.password;
+
+import com.sambath.security.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedPasswordEncoderTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Blocks every hash until released, so the pool and queue can be filled deterministically
+    private final PasswordEncoder slowEncoder = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            await();
+            return "{hash}" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            await();
+            return encodedPassword.equals("{hash}" + rawPassword);
+        }
+    };
+    private final BoundedPasswordEncoder passwordEncoder =
+            new BoundedPasswordEncoder(slowEncoder, 1, 1, 5_000, meterRegistry);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        passwordEncoder.shutdown();
+    }
+
+    @Test
+    void rejectsWhenPoolAndQueueAreFull() throws Exception {
+        // One at a time, a second hash submitted before the thread took the first would find the queue full
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> passwordEncoder.matches("a", "{hash}a"));
+        awaitGauge("auth.password.active", 1);
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> passwordEncoder.matches("b", "{hash}x"));
+        awaitGauge("auth.password.queue.size", 1);
+
+        assertThatThrownBy(() -> passwordEncoder.matches("c", "{hash}c"))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(meterRegistry.get("auth.password.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.get()).isTrue();
+        assertThat(queued.get()).isFalse();
+        assertThat(passwordEncoder.encode("d")).isEqualTo("{hash}d");
+        assertThat(meterRegistry.get("auth.password.hash").tag("operation", "matches").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsWhenWaitingTooLong() {
+        BoundedPasswordEncoder impatient = new BoundedPasswordEncoder(slowEncoder, 1, 1, 50, new SimpleMeterRegistry());
+        try {
+            assertThatThrownBy(() -> impatient.encode("a")).isInstanceOf(ServiceUnavailableException.class);
+        } finally {
+            impatient.shutdown();
+        }
+    }
+
+    private void awaitGauge(String name, double value) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get(name).gauge().value() < value) {
+            assertThat(System.nanoTime()).as("%s reaches %s", name, value).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
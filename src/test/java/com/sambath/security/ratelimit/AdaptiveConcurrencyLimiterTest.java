@@ -0,0 +1,101 @@
+package com.sambath.security.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void rejectsOnceTheLimitIsReached() {
+        AdaptiveConcurrencyLimiter limiter = limiter(3, 1, 100, 2.0, 0.2);
+
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(limiter, 3);
+        assertThat(limiter.tryAcquire()).isNull();
+        assertThat(limiter.getInFlight()).isEqualTo(3);
+
+        permits.get(0).ignore();
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void growsWhileLatencyIsSteadyAndTheLimitIsUsed() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 1, 100, 2.0, 0.2);
+
+        for (int i = 0; i < 20; i++) {
+            completeAfter(limiter, limiter.getLimit(), 10);
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(10).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    void doesNotGrowWhenMostlyIdle() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 1, 100, 2.0, 0.2);
+
+        for (int i = 0; i < 100; i++) {
+            completeAfter(limiter, 1, 10);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void shrinksWhenLatencyClimbs() {
+        AdaptiveConcurrencyLimiter limiter = limiter(50, 1, 100, 2.0, 0.5);
+        for (int i = 0; i < 20; i++) {
+            completeAfter(limiter, limiter.getLimit(), 10);
+        }
+        int before = limiter.getLimit();
+
+        // The database slows down tenfold
+        for (int i = 0; i < 5; i++) {
+            completeAfter(limiter, limiter.getLimit(), 100);
+        }
+
+        assertThat(limiter.getLimit()).isLessThan(before / 2);
+    }
+
+    @Test
+    void dropsCutTheLimitDownToTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 5, 100, 2.0, 0.2);
+
+        limiter.tryAcquire().dropped();
+        assertThat(limiter.getLimit()).isEqualTo(18);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.tryAcquire().dropped();
+        }
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initial, int min, int max, double tolerance, double smoothing) {
+        return new AdaptiveConcurrencyLimiter(initial, min, max, tolerance, smoothing, clock::get);
+    }
+
+    // Run count requests concurrently, each taking latencyInMs
+    private void completeAfter(AdaptiveConcurrencyLimiter limiter, int count, long latencyInMs) {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(limiter, count);
+        clock.addAndGet(latencyInMs * MILLISECOND);
+        permits.forEach(AdaptiveConcurrencyLimiter.Permit::success);
+    }
+
+    private static List<AdaptiveConcurrencyLimiter.Permit> acquire(AdaptiveConcurrencyLimiter limiter, int count) {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            assertThat(permit).isNotNull();
+            permits.add(permit);
+        }
+        return permits;
+    }
+}
@@ -0,0 +1,111 @@
+package com.sambath.security.ratelimit;
+
+import com.sambath.security.config.AppProperties;
+import com.sambath.security.exception.TooManyRequestsException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void bucketAllowsBurstThenRefillsOneTokenPerInterval() {
+        // 3 tokens, one back every second
+        TokenBucket bucket = new TokenBucket(SECOND, 3 * SECOND, 0);
+
+        assertThat(bucket.tryAcquire(0)).isZero();
+        assertThat(bucket.tryAcquire(0)).isZero();
+        assertThat(bucket.tryAcquire(0)).isZero();
+        assertThat(bucket.tryAcquire(0)).isEqualTo(SECOND);
+        assertThat(bucket.tryAcquire(SECOND / 2)).isEqualTo(SECOND / 2);
+        assertThat(bucket.tryAcquire(SECOND)).isZero();
+        assertThat(bucket.tryAcquire(SECOND)).isEqualTo(SECOND);
+        // Idle for a long time only refills up to the capacity
+        long later = 100 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(later)).isZero();
+        }
+        assertThat(bucket.tryAcquire(later)).isPositive();
+    }
+
+    @Test
+    void concurrentCallersNeverTakeMoreThanTheCapacity() throws Exception {
+        TokenBucket bucket = new TokenBucket(SECOND, 100 * SECOND, 0);
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 16; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 1000; j++) {
+                        if (bucket.tryAcquire(0) == 0) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(allowed.get()).isEqualTo(100);
+    }
+
+    @Test
+    void limitsByIpAndByEmailIndependently() {
+        RateLimiter rateLimiter = new RateLimiter(properties());
+
+        rateLimiter.check("login", "10.0.0.1", "user@example.com");
+        rateLimiter.check("login", "10.0.0.2", "other@example.com");
+        // Same email from another IP is limited by the email bucket, case does not matter
+        assertThatThrownBy(() -> rateLimiter.check("login", "10.0.0.3", "USER@example.com"))
+                .isInstanceOf(TooManyRequestsException.class)
+                .satisfies(e -> assertThat(((TooManyRequestsException) e).getRetryAfterInSec()).isBetween(1L, 60L));
+        // Same IP with another email is limited by the IP bucket
+        rateLimiter.check("login", "10.0.0.1", "third@example.com");
+        assertThatThrownBy(() -> rateLimiter.check("login", "10.0.0.1", "fourth@example.com"))
+                .isInstanceOf(TooManyRequestsException.class);
+        // Endpoints without limits are never rejected
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.check("confirm", "10.0.0.1");
+        }
+    }
+
+    @Test
+    void disabledLimiterAllowsEverything() {
+        AppProperties appProperties = properties();
+        appProperties.getRateLimit().setEnabled(false);
+        RateLimiter rateLimiter = new RateLimiter(appProperties);
+
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.check("login", "10.0.0.1", "user@example.com");
+        }
+    }
+
+    private static AppProperties properties() {
+        AppProperties appProperties = new AppProperties();
+        AppProperties.Endpoint login = new AppProperties.Endpoint();
+        login.setIp(limit(2));
+        login.setEmail(limit(1));
+        appProperties.getRateLimit().getEndpoints().put("login", login);
+        return appProperties;
+    }
+
+    private static AppProperties.Limit limit(int capacity) {
+        AppProperties.Limit limit = new AppProperties.Limit();
+        limit.setCapacity(capacity);
+        limit.setRefillPerMinute(1);
+        return limit;
+    }
+}
@@ -0,0 +1,67 @@
+package com.sambath.security.user.entity;
+
+import com.sambath.security.confirmationToken.ConfirmationToken;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Builds the JPA model the way Spring Boot does, without a database, so mapping errors
+// that would stop the application from starting fail here even where Docker is not available
+class EntityMappingTest {
+    private final StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, PostgreSQLDialect.class.getName())
+            .applySetting("hibernate.boot.allow_jdbc_metadata_access", false)
+            .build();
+
+    @AfterEach
+    void destroyRegistry() {
+        StandardServiceRegistryBuilder.destroy(registry);
+    }
+
+    @Test
+    void refreshTokenKeepsUserIndexAndForeignKey() {
+        Table refreshToken = refreshTokenTable();
+        assertThat(refreshToken.getIndex("refresh_token_user_id_idx")).isNotNull();
+        assertThat(refreshToken.getIndex("refresh_token_user_id_idx").getColumns())
+                .extracting(column -> column.getName())
+                .containsExactly("user_id");
+        assertThat(refreshToken.getForeignKeys().values())
+                .anySatisfy(foreignKey -> {
+                    assertThat(foreignKey.getName()).isEqualTo("refresh_token_user_id_fk");
+                    assertThat(foreignKey.getReferencedTable().getName()).isEqualTo("users");
+                    assertThat(foreignKey.getColumns()).extracting(column -> column.getName()).containsExactly("user_id");
+                });
+    }
+
+    @Test
+    void refreshTokenAlwaysHasAnExpiry() {
+        Table refreshToken = refreshTokenTable();
+
+        // Every row can be purged by expires_at
+        assertThat(refreshToken.getColumn(new Column("expires_at")).isNullable()).isFalse();
+        assertThat(refreshToken.getColumn(new Column("created_at")).isNullable()).isFalse();
+    }
+
+    private Table refreshTokenTable() {
+        Metadata metadata = new MetadataSources(registry)
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(RefreshToken.class)
+                .addAnnotatedClass(ConfirmationToken.class)
+                .getMetadataBuilder()
+                .applyImplicitNamingStrategy(new SpringImplicitNamingStrategy())
+                .applyPhysicalNamingStrategy(new CamelCaseToUnderscoresNamingStrategy())
+                .build();
+        return metadata.getEntityBinding(RefreshToken.class.getName()).getTable();
+    }
+}
@@ -0,0 +1,113 @@
+package com.sambath.security.user.repository;
+
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.RefreshToken;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+// Every repository call commits on its own, like it does in the service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RefreshTokenRepositoryTest {
+    private static final int CONCURRENT_REFRESHES = 16;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void rotateReplacesTokenAndReturnsUserId() {
+        RefreshToken refreshToken = saveRefreshToken();
+        String newRefreshTokenId = UUID.randomUUID().toString();
+
+        Optional<String> userId = rotate(refreshToken.getId(), newRefreshTokenId);
+
+        assertThat(userId).contains(refreshToken.getUserId());
+        assertThat(refreshTokenRepository.existsById(refreshToken.getId())).isFalse();
+        assertThat(refreshTokenRepository.existsById(newRefreshTokenId)).isTrue();
+        assertThat(rotate(refreshToken.getId(), UUID.randomUUID().toString())).isEmpty();
+    }
+
+    @Test
+    void onlyOneOfConcurrentRotationsWins() throws Exception {
+        RefreshToken refreshToken = saveRefreshToken();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_REFRESHES);
+        try {
+            List<Future<Optional<String>>> results = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_REFRESHES; i++) {
+                Callable<Optional<String>> refresh = () -> {
+                    start.await();
+                    return rotate(refreshToken.getId(), UUID.randomUUID().toString());
+                };
+                results.add(executor.submit(refresh));
+            }
+            start.countDown();
+
+            int winners = 0;
+            for (Future<Optional<String>> result : results) {
+                if (result.get().isPresent()) {
+                    assertThat(result.get()).contains(refreshToken.getUserId());
+                    winners++;
+                }
+            }
+            assertThat(winners).isEqualTo(1);
+            assertThat(refreshTokenRepository.existsById(refreshToken.getId())).isFalse();
+            assertThat(refreshTokenRepository.count()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Optional<String> rotate(String refreshTokenId, String newRefreshTokenId) {
+        LocalDateTime now = LocalDateTime.now();
+        return refreshTokenRepository.rotate(refreshTokenId, newRefreshTokenId, now, now.plusDays(30));
+    }
+
+    private RefreshToken saveRefreshToken() {
+        refreshTokenRepository.deleteAll();
+        User user = userRepository.save(User.builder()
+                .name("Test User")
+                .email(UUID.randomUUID() + "@example.com")
+                .password("password")
+                .role(Role.USER)
+                .provider(AuthProvider.email)
+                .enabled(true)
+                .build());
+        return refreshTokenRepository.save(RefreshToken.builder()
+                .userId(user.getId())
+                .createdAt(LocalDateTime.now())
+                .expiresAt(LocalDateTime.now().plusDays(30))
+                .build());
+    }
+}
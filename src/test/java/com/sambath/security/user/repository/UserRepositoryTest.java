@@ -0,0 +1,110 @@
+package com.sambath.security.user.repository;
+
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+// Every repository call commits on its own, like it does in the service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserRepositoryTest {
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void upsertRegistersNewUser() {
+        String email = UUID.randomUUID() + "@example.com";
+
+        Optional<User> user = upsert(email, "Test User", "https://example.com/a.png", AuthProvider.google);
+
+        assertThat(user).isPresent();
+        assertThat(user.get().getId()).isNotBlank();
+        assertThat(user.get().getEmail()).isEqualTo(email);
+        assertThat(user.get().getRole()).isEqualTo(Role.USER);
+        assertThat(user.get().getProvider()).isEqualTo(AuthProvider.google);
+        assertThat(user.get().isEnabled()).isTrue();
+        assertThat(userRepository.findByEmail(email)).isPresent();
+    }
+
+    @Test
+    void unchangedRepeatLoginDoesNotRewriteTheRow() {
+        String email = UUID.randomUUID() + "@example.com";
+        User registered = upsert(email, "Test User", "https://example.com/a.png", AuthProvider.google).orElseThrow();
+        String rowVersion = rowVersion(email);
+
+        Optional<User> user = upsert(email, "Test User", "https://example.com/a.png", AuthProvider.google);
+
+        assertThat(user).isPresent();
+        assertThat(user.get().getId()).isEqualTo(registered.getId());
+        // xmin only changes when the row is written
+        assertThat(rowVersion(email)).isEqualTo(rowVersion);
+    }
+
+    @Test
+    void changedProfileIsUpdated() {
+        String email = UUID.randomUUID() + "@example.com";
+        User registered = upsert(email, "Test User", null, AuthProvider.github).orElseThrow();
+
+        Optional<User> user = upsert(email, "Renamed User", "https://example.com/b.png", AuthProvider.github);
+
+        assertThat(user).isPresent();
+        assertThat(user.get().getId()).isEqualTo(registered.getId());
+        assertThat(user.get().getName()).isEqualTo("Renamed User");
+        assertThat(user.get().getImageUrl()).isEqualTo("https://example.com/b.png");
+    }
+
+    @Test
+    void otherProviderGetsTheStoredUserUnchanged() {
+        String email = UUID.randomUUID() + "@example.com";
+        upsert(email, "Test User", "https://example.com/a.png", AuthProvider.google);
+        String rowVersion = rowVersion(email);
+
+        Optional<User> user = upsert(email, "Other Name", "https://example.com/b.png", AuthProvider.facebook);
+
+        assertThat(user).isPresent();
+        assertThat(user.get().getProvider()).isEqualTo(AuthProvider.google);
+        assertThat(user.get().getName()).isEqualTo("Test User");
+        assertThat(rowVersion(email)).isEqualTo(rowVersion);
+    }
+
+    private Optional<User> upsert(String email, String name, String imageUrl, AuthProvider provider) {
+        return userRepository.upsertOAuth2User(
+                UUID.randomUUID().toString(),
+                name,
+                null,
+                null,
+                email,
+                imageUrl,
+                provider.name(),
+                "provider-id"
+        );
+    }
+
+    private String rowVersion(String email) {
+        return jdbcTemplate.queryForObject("SELECT xmin::text FROM users WHERE email = ?", String.class, email);
+    }
+}
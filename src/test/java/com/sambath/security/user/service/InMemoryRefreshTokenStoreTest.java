@@ -0,0 +1,72 @@
+package com.sambath.security.user.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryRefreshTokenStoreTest extends RefreshTokenStoreContractTest {
+    @Override
+    protected RefreshTokenStore createStore() {
+        return new InMemoryRefreshTokenStore();
+    }
+
+    @Test
+    void expiredTokensAreNotUsableAndGetSwept() {
+        InMemoryRefreshTokenStore store = new InMemoryRefreshTokenStore();
+        String userId = UUID.randomUUID().toString();
+        String expired = store.issue(userId, LocalDateTime.now().minusSeconds(1));
+        String live = store.issue(userId, LocalDateTime.now().plusDays(30));
+
+        assertThat(store.exists(expired)).isFalse();
+
+        store.sweepExpired();
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.rotate(expired, LocalDateTime.now().plusDays(30))).isEmpty();
+        assertThat(store.exists(live)).isTrue();
+    }
+
+    @Test
+    void rotationRacingRevokeAllForUserNeverLeavesALiveToken() throws Exception {
+        InMemoryRefreshTokenStore store = new InMemoryRefreshTokenStore();
+        String userId = UUID.randomUUID().toString();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 2_000; i++) {
+                String refreshTokenId = store.issue(userId, LocalDateTime.now().plusDays(30));
+                CyclicBarrier start = new CyclicBarrier(2);
+                CompletableFuture<Optional<RefreshTokenStore.RotatedRefreshToken>> rotation = CompletableFuture.supplyAsync(() -> {
+                    await(start);
+                    return store.rotate(refreshTokenId, LocalDateTime.now().plusDays(30));
+                }, executor);
+                CompletableFuture<Void> revocation = CompletableFuture.runAsync(() -> {
+                    await(start);
+                    store.revokeAllForUser(userId);
+                }, executor);
+                revocation.get();
+
+                // Either the rotation ran first and its successor was revoked, or it found nothing to rotate
+                rotation.get().ifPresent(rotated -> assertThat(store.exists(rotated.refreshTokenId())).isFalse());
+                assertThat(store.size()).isZero();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.sambath.security.user.service;
+
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({JpaRefreshTokenStore.class, RefreshTokenWriteBehind.class})
+class JpaRefreshTokenStoreTest extends RefreshTokenStoreContractTest {
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private JpaRefreshTokenStore jpaRefreshTokenStore;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Override
+    protected RefreshTokenStore createStore() {
+        return jpaRefreshTokenStore;
+    }
+
+    // refresh_token.user_id references users
+    @Override
+    protected String newUserId() {
+        return userRepository.save(User.builder()
+                .name("Test User")
+                .email(UUID.randomUUID() + "@example.com")
+                .password("password")
+                .role(Role.USER)
+                .provider(AuthProvider.email)
+                .enabled(true)
+                .build()).getId();
+    }
+}
@@ -0,0 +1,134 @@
+package com.sambath.security.user.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedRefreshTokenStoreTest extends RefreshTokenStoreContractTest {
+    private static final int CAPACITY = 1024;
+
+    @TempDir
+    Path directory;
+
+    private final List<MappedRefreshTokenStore> stores = new ArrayList<>();
+
+    @Override
+    protected RefreshTokenStore createStore() {
+        return open(directory.resolve(UUID.randomUUID() + ".db"));
+    }
+
+    @AfterEach
+    void closeStores() {
+        stores.forEach(MappedRefreshTokenStore::close);
+    }
+
+    @Test
+    void tokensSurviveRestart() {
+        Path path = directory.resolve("restart.db");
+        MappedRefreshTokenStore store = open(path);
+        String userId = UUID.randomUUID().toString();
+        String kept = store.issue(userId, LocalDateTime.now().plusDays(30));
+        String revoked = store.issue(userId, LocalDateTime.now().plusDays(30));
+        store.revoke(revoked);
+        store.close();
+
+        MappedRefreshTokenStore reopened = open(path);
+
+        assertThat(reopened.exists(kept)).isTrue();
+        assertThat(reopened.exists(revoked)).isFalse();
+        assertThat(reopened.size()).isEqualTo(1);
+    }
+
+    @Test
+    void sweepDropsExpiredTokensAndCompactsDeletedSlots() {
+        MappedRefreshTokenStore store = open(directory.resolve("sweep.db"));
+        String userId = UUID.randomUUID().toString();
+        List<String> live = new ArrayList<>();
+        // Fill well past a quarter of the table with tokens that expire, then sweep them out
+        for (int i = 0; i < CAPACITY / 2; i++) {
+            store.issue(userId, LocalDateTime.now().minusSeconds(1));
+            if (i % 8 == 0) {
+                live.add(store.issue(userId, LocalDateTime.now().plusDays(30)));
+            }
+        }
+
+        store.sweepExpired();
+
+        assertThat(store.size()).isEqualTo(live.size());
+        live.forEach(refreshTokenId -> assertThat(store.exists(refreshTokenId)).isTrue());
+        // Deleted slots were reclaimed, so the table takes another full load
+        for (int i = 0; i < CAPACITY / 2; i++) {
+            store.issue(userId, LocalDateTime.now().plusDays(30));
+        }
+        assertThat(store.size()).isEqualTo(live.size() + CAPACITY / 2);
+    }
+
+    @Test
+    void deletedSlotsAreReusedInsteadOfFillingTheTable() {
+        MappedRefreshTokenStore store = open(directory.resolve("churn.db"));
+        String userId = UUID.randomUUID().toString();
+        String kept = store.issue(userId, LocalDateTime.now().plusDays(30));
+
+        // Far more revoked tokens than slots, without a sweep in between
+        for (int i = 0; i < CAPACITY * 4; i++) {
+            store.revoke(store.issue(userId, LocalDateTime.now().plusDays(30)));
+        }
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.exists(kept)).isTrue();
+    }
+
+    @Test
+    void compactionReplacesTheFileWithACompleteTable() throws Exception {
+        Path path = directory.resolve("compact.db");
+        MappedRefreshTokenStore store = open(path);
+        String userId = UUID.randomUUID().toString();
+        List<String> live = new ArrayList<>();
+        for (int i = 0; i < CAPACITY / 2; i++) {
+            String refreshTokenId = store.issue(userId, LocalDateTime.now().plusDays(30));
+            if (i % 4 == 0) {
+                live.add(refreshTokenId);
+            } else {
+                store.revoke(refreshTokenId);
+            }
+        }
+
+        store.sweepExpired();
+        store.close();
+
+        assertThat(Files.exists(directory.resolve("compact.db.compact"))).isFalse();
+        MappedRefreshTokenStore reopened = open(path);
+        assertThat(reopened.size()).isEqualTo(live.size());
+        live.forEach(refreshTokenId -> assertThat(reopened.exists(refreshTokenId)).isTrue());
+    }
+
+    @Test
+    void unfinishedCompactionIsDiscardedOnStart() throws Exception {
+        Path path = directory.resolve("crash.db");
+        MappedRefreshTokenStore store = open(path);
+        String kept = store.issue(UUID.randomUUID().toString(), LocalDateTime.now().plusDays(30));
+        store.close();
+        // A compaction killed before its rename leaves a partial temporary file behind
+        Files.write(directory.resolve("crash.db.compact"), new byte[100]);
+
+        MappedRefreshTokenStore reopened = open(path);
+
+        assertThat(reopened.exists(kept)).isTrue();
+        assertThat(Files.exists(directory.resolve("crash.db.compact"))).isFalse();
+    }
+
+    private MappedRefreshTokenStore open(Path path) {
+        MappedRefreshTokenStore store = new MappedRefreshTokenStore(path, CAPACITY);
+        stores.add(store);
+        return store;
+    }
+}
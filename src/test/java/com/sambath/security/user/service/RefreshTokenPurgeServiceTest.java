@@ -0,0 +1,108 @@
+package com.sambath.security.user.service;
+
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.repository.RefreshTokenRepository;
+import com.sambath.security.user.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Import({RefreshTokenPurgeService.class, RefreshTokenPurgeServiceTest.Metrics.class})
+// The purge commits its own batches
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RefreshTokenPurgeServiceTest {
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Autowired
+    private RefreshTokenPurgeService refreshTokenPurgeService;
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Test
+    void purgesOnlyExpiredRows() {
+        refreshTokenRepository.deleteAll();
+        String userId = saveUser().getId();
+        LocalDateTime now = LocalDateTime.now();
+        String expired = insertRefreshToken(userId, now.minusDays(31), now.minusDays(1));
+        String live = insertRefreshToken(userId, now, now.plusDays(30));
+
+        refreshTokenPurgeService.purgeExpiredRefreshTokens();
+
+        assertThat(refreshTokenRepository.existsById(expired)).isFalse();
+        assertThat(refreshTokenRepository.existsById(live)).isTrue();
+    }
+
+    @Test
+    void rowsWithoutExpiryAreRejected() {
+        String userId = saveUser().getId();
+
+        // Such a row would never be purged
+        assertThatThrownBy(() -> insertRefreshToken(userId, LocalDateTime.now(), null))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> insertRefreshToken(userId, null, LocalDateTime.now().plusDays(30)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    private String insertRefreshToken(String userId, LocalDateTime createdAt, LocalDateTime expiresAt) {
+        String id = UUID.randomUUID().toString();
+        jdbcTemplate.update(
+                "INSERT INTO refresh_token (id, user_id, created_at, expires_at) VALUES (?, ?, ?, ?)",
+                id,
+                userId,
+                createdAt != null ? Timestamp.valueOf(createdAt) : null,
+                expiresAt != null ? Timestamp.valueOf(expiresAt) : null
+        );
+        return id;
+    }
+
+    private User saveUser() {
+        return userRepository.save(User.builder()
+                .name("Test User")
+                .email(UUID.randomUUID() + "@example.com")
+                .password("password")
+                .role(Role.USER)
+                .provider(AuthProvider.email)
+                .enabled(true)
+                .build());
+    }
+}
@@ -0,0 +1,134 @@
+package com.sambath.security.user.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Behavior every RefreshTokenStore must have, run against each implementation
+abstract class RefreshTokenStoreContractTest {
+    private static final int CONCURRENT_ROTATIONS = 16;
+
+    private RefreshTokenStore store;
+
+    protected abstract RefreshTokenStore createStore();
+
+    // Id of a user that may own refresh tokens
+    protected String newUserId() {
+        return UUID.randomUUID().toString();
+    }
+
+    @BeforeEach
+    void setUpStore() {
+        store = createStore();
+    }
+
+    @Test
+    void issuedTokenExists() {
+        String refreshTokenId = store.issue(newUserId(), expiresAt());
+
+        assertThat(refreshTokenId).isNotBlank();
+        assertThat(store.exists(refreshTokenId)).isTrue();
+        assertThat(store.exists(UUID.randomUUID().toString())).isFalse();
+    }
+
+    @Test
+    void rotateReplacesTokenOnce() {
+        String userId = newUserId();
+        String refreshTokenId = store.issue(userId, expiresAt());
+
+        Optional<RefreshTokenStore.RotatedRefreshToken> rotated = store.rotate(refreshTokenId, expiresAt());
+
+        assertThat(rotated).isPresent();
+        assertThat(rotated.get().userId()).isEqualTo(userId);
+        assertThat(rotated.get().refreshTokenId()).isNotEqualTo(refreshTokenId);
+        assertThat(store.exists(refreshTokenId)).isFalse();
+        assertThat(store.exists(rotated.get().refreshTokenId())).isTrue();
+        assertThat(store.rotate(refreshTokenId, expiresAt())).isEmpty();
+    }
+
+    @Test
+    void rotateUnknownTokenIsEmpty() {
+        assertThat(store.rotate(UUID.randomUUID().toString(), expiresAt())).isEmpty();
+    }
+
+    @Test
+    void onlyOneOfConcurrentRotationsWins() throws Exception {
+        String refreshTokenId = store.issue(newUserId(), expiresAt());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_ROTATIONS);
+        try {
+            List<Future<Optional<RefreshTokenStore.RotatedRefreshToken>>> results = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_ROTATIONS; i++) {
+                Callable<Optional<RefreshTokenStore.RotatedRefreshToken>> rotation = () -> {
+                    start.await();
+                    return store.rotate(refreshTokenId, expiresAt());
+                };
+                results.add(executor.submit(rotation));
+            }
+            start.countDown();
+
+            int winners = 0;
+            for (Future<Optional<RefreshTokenStore.RotatedRefreshToken>> result : results) {
+                if (result.get().isPresent()) {
+                    winners++;
+                }
+            }
+            assertThat(winners).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredTokenDoesNotExistAndCannotBeRotated() {
+        String expired = store.issue(newUserId(), LocalDateTime.now().minusSeconds(1));
+
+        assertThat(store.exists(expired)).isFalse();
+        assertThat(store.rotate(expired, expiresAt())).isEmpty();
+        assertThat(store.exists(expired)).isFalse();
+    }
+
+    @Test
+    void revokeDeletesTokenOnce() {
+        String refreshTokenId = store.issue(newUserId(), expiresAt());
+
+        assertThat(store.revoke(refreshTokenId)).isTrue();
+        assertThat(store.exists(refreshTokenId)).isFalse();
+        assertThat(store.revoke(refreshTokenId)).isFalse();
+    }
+
+    @Test
+    void revokeAllForUserOnlyDeletesThatUsersTokens() {
+        String userId = newUserId();
+        String otherUserId = newUserId();
+        String first = store.issue(userId, expiresAt());
+        String second = store.issue(userId, expiresAt());
+        String rotated = store.rotate(store.issue(userId, expiresAt()), expiresAt())
+                .orElseThrow()
+                .refreshTokenId();
+        String other = store.issue(otherUserId, expiresAt());
+
+        store.revokeAllForUser(userId);
+
+        assertThat(store.exists(first)).isFalse();
+        assertThat(store.exists(second)).isFalse();
+        assertThat(store.exists(rotated)).isFalse();
+        assertThat(store.exists(other)).isTrue();
+    }
+
+    private static LocalDateTime expiresAt() {
+        return LocalDateTime.now().plusDays(30);
+    }
+}
@@ -0,0 +1,196 @@
+package com.sambath.security.user.service;
+
+import com.sambath.security.user.entity.RefreshToken;
+import com.sambath.security.user.repository.RefreshTokenRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Drives flush by hand against a JdbcTemplate that rejects chosen rows or is down
+class RefreshTokenWriteBehindTest {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long VISIBILITY_TIMEOUT_IN_MS = 1_200;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final List<String> committed = new ArrayList<>();
+    private final List<String> rejected = new ArrayList<>();
+    private final AtomicBoolean down = new AtomicBoolean();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Long flush interval, the scheduled flush never runs during a test
+    private final RefreshTokenWriteBehind writeBehind =
+            new RefreshTokenWriteBehind(null, jdbcTemplate, meterRegistry, true, 60_000, 10, 100, MAX_ATTEMPTS, 120_000);
+
+    RefreshTokenWriteBehindTest() {
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    Collection<RefreshToken> refreshTokens = invocation.getArgument(1);
+                    if (down.get()) {
+                        throw new DataAccessResourceFailureException("Connection refused");
+                    }
+                    for (RefreshToken refreshToken : refreshTokens) {
+                        if (rejected.contains(refreshToken.getId())) {
+                            throw new DataIntegrityViolationException("refresh_token_user_id_fk");
+                        }
+                    }
+                    refreshTokens.forEach(refreshToken -> committed.add(refreshToken.getId()));
+                    return new int[0][];
+                });
+    }
+
+    @AfterEach
+    void shutdown() {
+        down.set(false);
+        rejected.clear();
+        writeBehind.shutdown();
+    }
+
+    @Test
+    void rejectedRowIsDroppedAfterMaxAttemptsAndTheRestIsWritten() {
+        RefreshToken good = save();
+        RefreshToken poison = save();
+        RefreshToken other = save();
+        rejected.add(poison.getId());
+
+        for (int i = 1; i < MAX_ATTEMPTS; i++) {
+            assertThatThrownBy(writeBehind::flush).isInstanceOf(DataIntegrityViolationException.class);
+        }
+        assertThat(committed).isEmpty();
+
+        writeBehind.flush();
+
+        assertThat(committed).containsExactlyInAnyOrder(good.getId(), other.getId());
+        // Nothing is left pending, lookups of the dropped token no longer wait for it
+        writeBehind.flush();
+        assertThat(committed).hasSize(2);
+    }
+
+    @Test
+    void rowsAreKeptWhileTheDatabaseIsDown() {
+        RefreshToken first = save();
+        RefreshToken second = save();
+        down.set(true);
+
+        for (int i = 0; i < MAX_ATTEMPTS + 2; i++) {
+            assertThatThrownBy(writeBehind::flush).isInstanceOf(DataAccessResourceFailureException.class);
+        }
+
+        down.set(false);
+        writeBehind.flush();
+
+        assertThat(committed).containsExactlyInAnyOrder(first.getId(), second.getId());
+    }
+
+    @Test
+    void batchesAfterARejectedRowAreWritten() {
+        RefreshToken poison = save();
+        rejected.add(poison.getId());
+        for (int i = 1; i < MAX_ATTEMPTS; i++) {
+            assertThatThrownBy(writeBehind::flush).isInstanceOf(DataIntegrityViolationException.class);
+        }
+
+        List<String> later = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            later.add(save().getId());
+        }
+        writeBehind.flush();
+
+        assertThat(committed).containsExactlyInAnyOrderElementsOf(later);
+    }
+
+    @Test
+    void rowsThatCannotBeWrittenBeforeTheirDeadlineAreAbandoned() throws Exception {
+        RefreshTokenWriteBehind shortDeadline = new RefreshTokenWriteBehind(
+                null, jdbcTemplate, meterRegistry, true, 50, 10, 100, MAX_ATTEMPTS, VISIBILITY_TIMEOUT_IN_MS);
+        try {
+            down.set(true);
+            String refreshTokenId = save(shortDeadline).getId();
+
+            // The scheduled flush keeps failing until the row's last chance to commit has passed
+            Thread.sleep(VISIBILITY_TIMEOUT_IN_MS);
+            down.set(false);
+            shortDeadline.flush();
+
+            assertThat(committed).doesNotContain(refreshTokenId);
+            assertThat(meterRegistry.counter("auth.refresh.token.write.behind.abandoned").count()).isEqualTo(1);
+        } finally {
+            shortDeadline.shutdown();
+        }
+    }
+
+    @Test
+    void otherNodesWaitForTheDeadlineOfAQueuedToken() {
+        RefreshTokenWriteBehind issuingNode = new RefreshTokenWriteBehind(
+                null, jdbcTemplate, meterRegistry, true, 100, 10, 100, MAX_ATTEMPTS, VISIBILITY_TIMEOUT_IN_MS);
+        RefreshTokenWriteBehind otherNode = new RefreshTokenWriteBehind(
+                null, jdbcTemplate, meterRegistry, false, 60_000, 10, 100, MAX_ATTEMPTS, VISIBILITY_TIMEOUT_IN_MS);
+        try {
+            String refreshTokenId = save(issuingNode).getId();
+            long start = System.nanoTime();
+
+            assertThat(otherNode.awaitDeadline(refreshTokenId)).isTrue();
+            assertThat(System.nanoTime() - start).isGreaterThan(VISIBILITY_TIMEOUT_IN_MS / 2 * 1_000_000);
+            // Past the deadline, and for tokens written synchronously, a miss is final right away
+            assertThat(otherNode.awaitDeadline(refreshTokenId)).isFalse();
+            assertThat(otherNode.awaitDeadline(UUID.randomUUID().toString())).isFalse();
+        } finally {
+            issuingNode.shutdown();
+        }
+    }
+
+    @Test
+    void revokeOnAnotherNodeDeletesTheRowWrittenAfterItsFirstDelete() {
+        RefreshTokenWriteBehind issuingNode = new RefreshTokenWriteBehind(
+                null, jdbcTemplate, meterRegistry, true, 100, 10, 100, MAX_ATTEMPTS, VISIBILITY_TIMEOUT_IN_MS);
+        RefreshTokenRepository refreshTokenRepository = mock(RefreshTokenRepository.class);
+        JpaRefreshTokenStore otherNode = new JpaRefreshTokenStore(refreshTokenRepository, new RefreshTokenWriteBehind(
+                null, jdbcTemplate, meterRegistry, false, 60_000, 10, 100, MAX_ATTEMPTS, VISIBILITY_TIMEOUT_IN_MS));
+        try {
+            String refreshTokenId = save(issuingNode).getId();
+            // Not written yet at the first delete, written by the time of the second
+            when(refreshTokenRepository.deleteRefreshTokenById(refreshTokenId)).thenReturn(0, 1);
+
+            assertThat(otherNode.revoke(refreshTokenId)).isTrue();
+            verify(refreshTokenRepository, times(2)).deleteRefreshTokenById(eq(refreshTokenId));
+        } finally {
+            issuingNode.shutdown();
+        }
+    }
+
+    private RefreshToken save() {
+        return save(writeBehind);
+    }
+
+    private RefreshToken save(RefreshTokenWriteBehind writeBehind) {
+        LocalDateTime now = LocalDateTime.now();
+        RefreshToken refreshToken = RefreshToken.builder()
+                .userId("user")
+                .createdAt(now)
+                .expiresAt(now.plusDays(30))
+                .build();
+        writeBehind.save(refreshToken);
+        return refreshToken;
+    }
+}
@@ -0,0 +1,58 @@
+package com.sambath.security.user.service;
+
+import com.sambath.security.user.entity.AuthProvider;
+import com.sambath.security.user.entity.Role;
+import com.sambath.security.user.entity.User;
+import com.sambath.security.user.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class UserDetailsCacheTest {
+    private final User entity = User.builder()
+            .id(UUID.randomUUID().toString())
+            .name("Test User")
+            .email("user@example.com")
+            .password("old-hash")
+            .role(Role.USER)
+            .provider(AuthProvider.email)
+            .enabled(true)
+            .build();
+    private final UserDetailsCache userDetailsCache = new UserDetailsCache(
+            username -> UserSnapshot.of(entity), true, 100, Duration.ofMinutes(5));
+
+    @Test
+    void cachedUserIsNotChangedByLaterChangesOfTheEntity() {
+        UserDetails cached = userDetailsCache.loadUserByUsername(entity.getEmail());
+
+        entity.setRole(Role.ADMIN);
+        entity.setEnabled(false);
+        entity.setPassword("changed");
+
+        UserDetails again = userDetailsCache.loadUserByUsername(entity.getEmail());
+        assertThat(again).isSameAs(cached).isInstanceOf(UserSnapshot.class);
+        assertThat(again.isEnabled()).isTrue();
+        assertThat(again.getPassword()).isEqualTo("old-hash");
+        assertThat(((UserSnapshot) again).role()).isEqualTo(Role.USER);
+    }
+
+    @Test
+    void passwordUpgradeReturnsACopyAndEvictsTheCachedUser() {
+        UserRepository userRepository = mock(UserRepository.class);
+        UserService userService = new UserService(userRepository, userDetailsCache);
+        UserDetails cached = userDetailsCache.loadUserByUsername(entity.getEmail());
+
+        UserDetails upgraded = userService.updatePassword(cached, "new-hash");
+
+        verify(userRepository).updatePassword(entity.getEmail(), "new-hash");
+        assertThat(upgraded.getPassword()).isEqualTo("new-hash");
+        assertThat(cached.getPassword()).isEqualTo("old-hash");
+        assertThat(userDetailsCache.getCache().getIfPresent(entity.getEmail())).isNull();
+    }
+}